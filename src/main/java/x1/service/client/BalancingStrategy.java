@@ -0,0 +1,20 @@
+package x1.service.client;
+
+import java.util.List;
+
+/**
+ * Picks one of the registered instances of a service. Implementations are called on every request and must not
+ * block.
+ */
+@FunctionalInterface
+public interface BalancingStrategy {
+
+  /**
+   * @param instances
+   *          the instances of the service, never empty
+   * @param ticket
+   *          a sequence number which is incremented with each choice for the service
+   * @return the index of the chosen instance
+   */
+  int choose(List<Instance> instances, int ticket);
+}
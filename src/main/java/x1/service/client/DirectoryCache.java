@@ -0,0 +1,467 @@
+package x1.service.client;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import x1.service.etcd.Node;
+import x1.service.etcd.Result;
+import x1.service.etcd.WatchListener;
+
+/**
+ * A bounded cache of resolved service directories, invalidated by the events of a recursive watch on the registry
+ * prefix.
+ * <ul>
+ * <li>The ttl only bounds the staleness if events are lost, e.g. while the watch reconnects. A directory older than
+ * the soft ttl is still served while it is read again in the background.</li>
+ * <li>Directories which are not found are cached as empty for the shorter negative ttl.</li>
+ * <li>Each directory is cached with its parsed {@link ServiceEndpoint endpoints}; an endpoint is parsed again only if
+ * the modifiedIndex of its node has changed.</li>
+ * <li>Concurrent reads of the same directory are coalesced into one.</li>
+ * <li>Directories seeded from a {@link RegistrySnapshot} are kept apart as stale and served only until etcd has
+ * answered for them.</li>
+ * </ul>
+ * A read is only cached if its directory has not been invalidated while it was in flight. The generations which
+ * detect this are kept per directory (hashed into stripes), so events of other services do not discard the read.
+ */
+public class DirectoryCache implements WatchListener {
+  private static final Logger LOG = LoggerFactory.getLogger(DirectoryCache.class);
+  private static final int STRIPES = 256;
+
+  private record Entry(List<Node> nodes, List<ServiceEndpoint> endpoints, long refreshAt, long expiresAt,
+      AtomicBoolean refreshing) {
+  }
+
+  /**
+   * A read in flight and the generation of its directory when it was started
+   */
+  private record Pending(long generation, CompletableFuture<List<Node>> promise) {
+  }
+
+  private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, ServiceEndpoint> parsed = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, List<Node>> stale = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, Pending> inFlight = new ConcurrentHashMap<>();
+  private final int maxSize;
+  private final long ttl;
+  private final long negativeTtl;
+  private final long softTtl;
+  private final Executor refresher;
+  private final AtomicLong generation = new AtomicLong();
+  private final AtomicLongArray generations = new AtomicLongArray(STRIPES);
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder coalesced = new LongAdder();
+  private final LongAdder refreshes = new LongAdder();
+
+  /**
+   * @param maxSize
+   *          the maximum number of cached directories, 0 disables the cache
+   * @param ttl
+   *          how long (ms) a directory is cached
+   */
+  public DirectoryCache(int maxSize, long ttl) {
+    this(maxSize, ttl, 0);
+  }
+
+  /**
+   * @param maxSize
+   *          the maximum number of cached directories, 0 disables the cache
+   * @param ttl
+   *          how long (ms) a directory is cached
+   * @param negativeTtl
+   *          how long (ms) a directory which was not found is cached, 0 disables negative caching
+   */
+  public DirectoryCache(int maxSize, long ttl, long negativeTtl) {
+    this(maxSize, ttl, negativeTtl, ttl, null);
+  }
+
+  /**
+   * @param maxSize
+   *          the maximum number of cached directories, 0 disables the cache
+   * @param ttl
+   *          how long (ms) a directory is cached
+   * @param negativeTtl
+   *          how long (ms) a directory which was not found is cached, 0 disables negative caching
+   * @param softTtl
+   *          after how long (ms) a cached directory is read again in the background, disabled if not less than ttl
+   * @param refresher
+   *          runs the background reads
+   */
+  public DirectoryCache(int maxSize, long ttl, long negativeTtl, long softTtl, Executor refresher) {
+    this.maxSize = maxSize;
+    this.ttl = TimeUnit.MILLISECONDS.toNanos(ttl);
+    this.negativeTtl = TimeUnit.MILLISECONDS.toNanos(negativeTtl);
+    this.softTtl = TimeUnit.MILLISECONDS.toNanos(Math.min(softTtl, ttl));
+    this.refresher = refresher;
+  }
+
+  /**
+   * @return the cached nodes of the directory, null if not cached
+   */
+  public List<Node> get(String directory) {
+    var entry = lookup(directory);
+    return entry != null ? entry.nodes() : null;
+  }
+
+  /**
+   * @return the cached nodes of the directory, null if not cached. Nodes older than the soft ttl are read again in
+   *         the background with the given read.
+   */
+  public List<Node> get(String directory, Supplier<CompletableFuture<List<Node>>> read) {
+    var entry = lookup(directory);
+    if (entry == null) {
+      return null;
+    }
+    revalidate(directory, entry, read);
+    return entry.nodes();
+  }
+
+  /**
+   * @return the parsed endpoints of the cached directory, null if not cached
+   */
+  public List<ServiceEndpoint> getEndpoints(String directory) {
+    var entry = lookup(directory);
+    return entry != null ? entry.endpoints() : null;
+  }
+
+  /**
+   * @return the parsed endpoints of the cached directory, null if not cached. Endpoints older than the soft ttl are
+   *         read again in the background with the given read.
+   */
+  public List<ServiceEndpoint> getEndpoints(String directory, Supplier<CompletableFuture<List<Node>>> read) {
+    var entry = lookup(directory);
+    if (entry == null) {
+      return null;
+    }
+    revalidate(directory, entry, read);
+    return entry.endpoints();
+  }
+
+  /**
+   * Starts one background read per entry once it is older than the soft ttl. If the read fails, the entry is read
+   * again when it has expired.
+   */
+  private void revalidate(String directory, Entry entry, Supplier<CompletableFuture<List<Node>>> read) {
+    if (refresher == null || System.nanoTime() - entry.refreshAt() < 0) {
+      return;
+    }
+    if (entry.refreshing().compareAndSet(false, true)) {
+      refreshes.increment();
+      LOG.trace("refresh {}", directory);
+      try {
+        refresher.execute(() -> coalesce(directory, read));
+      } catch (RejectedExecutionException e) {
+        // shut down
+        entry.refreshing().set(false);
+      }
+    }
+  }
+
+  private Entry lookup(String directory) {
+    var entry = entries.get(directory);
+    if (entry != null) {
+      if (System.nanoTime() - entry.expiresAt() < 0) {
+        hits.increment();
+        return entry;
+      }
+      if (entries.remove(directory, entry)) {
+        evictions.increment();
+        forget(entry);
+      }
+    }
+    misses.increment();
+    return null;
+  }
+
+  /**
+   * Adds the directories of a snapshot as stale, i.e. last known, directories
+   */
+  public void seed(Map<String, List<Node>> directories) {
+    directories.forEach((directory, nodes) -> stale.put(directory, List.copyOf(nodes)));
+  }
+
+  /**
+   * @return the last known nodes of a directory which has not been read from etcd yet, null if there are none
+   */
+  public List<Node> getStale(String directory) {
+    return stale.get(directory);
+  }
+
+  public boolean isStale(String directory) {
+    return stale.containsKey(directory);
+  }
+
+  /**
+   * Drops the stale nodes of the directory, e.g. as etcd has answered that it does not exist
+   */
+  public void removeStale(String directory) {
+    stale.remove(directory);
+  }
+
+  /**
+   * @return the cached and the stale directories, e.g. to be saved in a {@link RegistrySnapshot}
+   */
+  public Map<String, List<Node>> view() {
+    var view = new HashMap<String, List<Node>>(stale);
+    entries.forEach((directory, entry) -> view.put(directory, entry.nodes()));
+    return view;
+  }
+
+  /**
+   * @return the endpoint of the node, parsed only if the node has changed since it was parsed last
+   */
+  public ServiceEndpoint toEndpoint(Node node) {
+    if (maxSize <= 0) {
+      return ServiceEndpoint.parse(node);
+    }
+    var endpoint = parsed.get(node.getKey());
+    if (endpoint == null || !endpoint.isCurrent(node)) {
+      endpoint = ServiceEndpoint.parse(node);
+      parsed.put(node.getKey(), endpoint);
+    }
+    return endpoint;
+  }
+
+  public List<ServiceEndpoint> toEndpoints(List<Node> nodes) {
+    return nodes.stream().map(this::toEndpoint).toList();
+  }
+
+  private void forget(Entry entry) {
+    entry.endpoints().forEach(endpoint -> parsed.remove(endpoint.key(), endpoint));
+  }
+
+  /**
+   * @return the generation of the directory to pass to {@link #put(String, List, long)}, taken before it is read
+   */
+  public long getGeneration(String directory) {
+    // both counters only grow, so the sum changes whenever one of them does
+    return generation.get() + generations.get(stripe(directory));
+  }
+
+  private static int stripe(String directory) {
+    return Math.floorMod(directory.hashCode(), STRIPES);
+  }
+
+  /**
+   * Caches the nodes of a directory, unless the cache has been invalidated since the given generation was taken, as
+   * the nodes might be outdated already.
+   *
+   * @return an immutable copy of the nodes
+   */
+  public List<Node> put(String directory, List<Node> nodes, long generation) {
+    var copy = nodes != null ? List.copyOf(nodes) : List.<Node> of();
+    stale.remove(directory);
+    if (maxSize <= 0) {
+      return copy;
+    }
+    if (getGeneration(directory) != generation) {
+      return copy;
+    }
+    var now = System.nanoTime();
+    cache(directory, new Entry(copy, toEndpoints(copy), now + softTtl, now + ttl, new AtomicBoolean()), generation);
+    return copy;
+  }
+
+  /**
+   * Caches a directory which was not found as empty for the negative ttl, unless the cache has been invalidated since
+   * the given generation was taken
+   */
+  public void putMissing(String directory, long generation) {
+    stale.remove(directory);
+    if (maxSize <= 0 || negativeTtl <= 0) {
+      return;
+    }
+    if (getGeneration(directory) != generation) {
+      return;
+    }
+    var expiresAt = System.nanoTime() + negativeTtl;
+    cache(directory, new Entry(List.of(), List.of(), expiresAt, expiresAt, new AtomicBoolean()), generation);
+  }
+
+  /**
+   * Adds the entry, and takes it back if the directory has been invalidated meanwhile. Only this entry is removed, as
+   * a concurrent reader might have cached a newer one.
+   */
+  private void cache(String directory, Entry entry, long generation) {
+    entries.put(directory, entry);
+    if (getGeneration(directory) != generation) {
+      if (entries.remove(directory, entry)) {
+        forget(entry);
+      }
+      return;
+    }
+    if (entries.size() > maxSize) {
+      evict();
+    }
+  }
+
+  /**
+   * Joins the read of the directory in flight, or starts one with the given function. A read which was started before
+   * the directory was invalidated is not joined, as it might return the nodes before the change.
+   */
+  public CompletableFuture<List<Node>> coalesce(String directory, Supplier<CompletableFuture<List<Node>>> read) {
+    var generation = getGeneration(directory);
+    var pending = inFlight.get(directory);
+    while (pending == null || pending.generation() < generation) {
+      var started = new Pending(generation, new CompletableFuture<>());
+      var replaced = pending == null ? inFlight.putIfAbsent(directory, started) == null
+          : inFlight.replace(directory, pending, started);
+      if (replaced) {
+        read.get().whenComplete((nodes, e) -> {
+          inFlight.remove(directory, started);
+          if (e != null) {
+            started.promise().completeExceptionally(e);
+          } else {
+            started.promise().complete(nodes);
+          }
+        });
+        return started.promise();
+      }
+      pending = inFlight.get(directory);
+    }
+    coalesced.increment();
+    return pending.promise();
+  }
+
+  /**
+   * Evicts the entries which expire first, a tenth of the maximum size more than necessary, so that the entries are
+   * not sorted again on every put. The parsed endpoints go with them, also those which were parsed for nodes outside
+   * of the cached directories and would otherwise only be removed by the watch.
+   */
+  private void evict() {
+    var excess = entries.size() - maxSize;
+    if (excess <= 0) {
+      return;
+    }
+    var oldest = entries.entrySet().stream()
+        .sorted(Comparator.comparingLong((Map.Entry<String, Entry> e) -> e.getValue().expiresAt()))
+        .limit(excess + maxSize / 10).toList();
+    for (var e : oldest) {
+      if (entries.remove(e.getKey(), e.getValue())) {
+        evictions.increment();
+      }
+    }
+    var cached = new HashSet<ServiceEndpoint>();
+    entries.values().forEach(entry -> cached.addAll(entry.endpoints()));
+    parsed.values().removeIf(endpoint -> !cached.contains(endpoint));
+  }
+
+  /**
+   * Removes the directory of the changed key, and all directories below it if the key is a directory itself
+   */
+  public void invalidate(String key, boolean dir) {
+    if (dir) {
+      // the directories below are not known, so all reads in flight are outdated
+      generation.incrementAndGet();
+    }
+    generations.incrementAndGet(stripe(key));
+    entries.remove(key);
+    parsed.remove(key);
+    stale.remove(key);
+    var slash = key.lastIndexOf('/');
+    if (slash > 0) {
+      generations.incrementAndGet(stripe(key.substring(0, slash)));
+      entries.remove(key.substring(0, slash));
+      stale.remove(key.substring(0, slash));
+    }
+    if (dir) {
+      entries.keySet().removeIf(directory -> directory.startsWith(key + "/"));
+      parsed.keySet().removeIf(k -> k.startsWith(key + "/"));
+      stale.keySet().removeIf(directory -> directory.startsWith(key + "/"));
+    }
+  }
+
+  public void invalidateAll() {
+    generation.incrementAndGet();
+    entries.clear();
+    parsed.clear();
+    stale.clear();
+  }
+
+  @Override
+  public void onEvent(Result event) {
+    var node = event.getNode();
+    if (node == null) {
+      return;
+    }
+    var dir = node.isDir() || (event.getPrevNode() != null && event.getPrevNode().isDir());
+    LOG.trace("{} {} -> invalidate", event.getAction(), node.getKey());
+    invalidate(node.getKey(), dir);
+  }
+
+  @Override
+  public void onResync(Result snapshot) {
+    LOG.debug("registry listed again, invalidate all");
+    invalidateAll();
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  public long getEvictions() {
+    return evictions.sum();
+  }
+
+  /**
+   * @return the number of reads which joined a read of the same directory in flight
+   */
+  public long getCoalesced() {
+    return coalesced.sum();
+  }
+
+  /**
+   * @return the number of background reads of directories older than the soft ttl
+   */
+  public long getRefreshes() {
+    return refreshes.sum();
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  @Override
+  public String toString() {
+    var builder = new StringBuilder();
+    builder.append("DirectoryCache [size=");
+    builder.append(entries.size());
+    builder.append(", stale=");
+    builder.append(stale.size());
+    builder.append(", maxSize=");
+    builder.append(maxSize);
+    builder.append(", hits=");
+    builder.append(hits.sum());
+    builder.append(", misses=");
+    builder.append(misses.sum());
+    builder.append(", evictions=");
+    builder.append(evictions.sum());
+    builder.append(", coalesced=");
+    builder.append(coalesced.sum());
+    builder.append(", refreshes=");
+    builder.append(refreshes.sum());
+    builder.append("]");
+    return builder.toString();
+  }
+}
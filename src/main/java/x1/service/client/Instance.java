@@ -0,0 +1,155 @@
+package x1.service.client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The load of a registered service instance as seen by this client: the number of calls in flight and the EWMA of
+ * their latency, and its health: the consecutive failures, the recent error rate and whether it is ejected. All
+ * updates but the ejection are lock-free.
+ */
+public class Instance {
+  private static final double ALPHA = 0.3;
+  private static final int WINDOW = 100;
+
+  private final String key;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicLong latency = new AtomicLong(Double.doubleToRawLongBits(0));
+  private final AtomicInteger consecutiveFailures = new AtomicInteger();
+  private final AtomicInteger successes = new AtomicInteger();
+  private final AtomicInteger failures = new AtomicInteger();
+  private final AtomicInteger ejections = new AtomicInteger();
+  private volatile long ejectedUntil;
+
+  public Instance(String key) {
+    this.key = key;
+  }
+
+  /**
+   * @return the key of the instance in etcd
+   */
+  public String getKey() {
+    return key;
+  }
+
+  public int getInFlight() {
+    return inFlight.get();
+  }
+
+  /**
+   * @return the EWMA of the latency in ns, 0 if not measured yet
+   */
+  public double getLatency() {
+    return Double.longBitsToDouble(latency.get());
+  }
+
+  /**
+   * @return true if the instance is ejected at the given time (ns)
+   */
+  public boolean isEjected(long now) {
+    return ejections.get() > 0 && now - ejectedUntil < 0;
+  }
+
+  /**
+   * @return how often the instance has been ejected in a row
+   */
+  public int getEjections() {
+    return ejections.get();
+  }
+
+  /**
+   * @return the recent failures in percent of the recent calls, 0 if less than minCalls calls have been reported
+   */
+  public int getErrorRate(int minCalls) {
+    var failed = failures.get();
+    var total = failed + successes.get();
+    return total == 0 || total < minCalls ? 0 : failed * 100 / total;
+  }
+
+  void succeeded() {
+    consecutiveFailures.set(0);
+    successes.incrementAndGet();
+    decay();
+  }
+
+  /**
+   * @return the number of consecutive failures
+   */
+  int failed() {
+    failures.incrementAndGet();
+    decay();
+    return consecutiveFailures.incrementAndGet();
+  }
+
+  /**
+   * Halves the counts once the window is full, so the error rate follows the recent calls
+   */
+  private void decay() {
+    if (successes.get() + failures.get() >= WINDOW) {
+      successes.updateAndGet(n -> n / 2);
+      failures.updateAndGet(n -> n / 2);
+    }
+  }
+
+  /**
+   * Ejects the instance for the base time, doubled with each ejection in a row up to the max time. An instance
+   * which has not been ejected for the max time starts again with the base time.
+   *
+   * @return the end (ns) of the ejection
+   */
+  synchronized long eject(long now, long base, long max) {
+    if (isEjected(now)) {
+      return ejectedUntil;
+    }
+    if (ejections.get() > 0 && now - ejectedUntil > max) {
+      ejections.set(0);
+    }
+    var n = ejections.get();
+    var duration = n >= 30 ? max : Math.min(max, base << n);
+    ejectedUntil = now + duration;
+    ejections.incrementAndGet();
+    consecutiveFailures.set(0);
+    successes.set(0);
+    failures.set(0);
+    return ejectedUntil;
+  }
+
+  void start() {
+    inFlight.incrementAndGet();
+  }
+
+  void complete(long nanos) {
+    inFlight.decrementAndGet();
+    if (nanos < 0) {
+      return;
+    }
+    long current;
+    long updated;
+    do {
+      current = latency.get();
+      var previous = Double.longBitsToDouble(current);
+      updated = Double.doubleToRawLongBits(previous == 0 ? nanos : ALPHA * nanos + (1 - ALPHA) * previous);
+    } while (!latency.compareAndSet(current, updated));
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString() {
+    var builder = new StringBuilder();
+    builder.append("Instance [key=");
+    builder.append(key);
+    builder.append(", inFlight=");
+    builder.append(inFlight.get());
+    builder.append(", latency=");
+    builder.append(TimeUnit.NANOSECONDS.toMicros((long) getLatency()));
+    builder.append("us, ejected=");
+    builder.append(isEjected(System.nanoTime()));
+    builder.append("]");
+    return builder.toString();
+  }
+}
@@ -0,0 +1,79 @@
+package x1.service.client;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The endpoints of a service, kept up to date in the background, see {@link ResolvedService}. Reading them is one
+ * volatile read; the list is immutable and replaced on change.
+ */
+public class LiveEndpoints {
+  private final String service;
+  private final String directory;
+  private final AtomicLong requested = new AtomicLong();
+  private long applied = -1;
+  private volatile List<ServiceEndpoint> endpoints = List.of();
+
+  LiveEndpoints(String service, String directory) {
+    this.service = service;
+    this.directory = directory;
+  }
+
+  /**
+   * @return the current endpoints, empty if no instance is registered
+   */
+  public List<ServiceEndpoint> get() {
+    return endpoints;
+  }
+
+  public boolean isEmpty() {
+    return endpoints.isEmpty();
+  }
+
+  /**
+   * @return technology/service/version/protocol/stage of the resolved service
+   */
+  public String getService() {
+    return service;
+  }
+
+  /**
+   * @return the directory whose changes update the endpoints
+   */
+  String getDirectory() {
+    return directory;
+  }
+
+  /**
+   * @return the sequence number of a new resolution
+   */
+  long next() {
+    return requested.incrementAndGet();
+  }
+
+  /**
+   * Replaces the endpoints, unless a later resolution has been applied already
+   */
+  synchronized void update(long sequence, List<ServiceEndpoint> updated) {
+    if (sequence > applied) {
+      applied = sequence;
+      endpoints = List.copyOf(updated);
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString() {
+    var builder = new StringBuilder();
+    builder.append("LiveEndpoints [service=");
+    builder.append(service);
+    builder.append(", endpoints=");
+    builder.append(endpoints.size());
+    builder.append("]");
+    return builder.toString();
+  }
+}
@@ -0,0 +1,141 @@
+package x1.service.client;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedScheduledExecutorService;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Produces;
+import jakarta.enterprise.inject.spi.InjectionPoint;
+import jakarta.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import x1.service.etcd.Result;
+import x1.service.etcd.WatchListener;
+import x1.service.registry.Protocol;
+import x1.service.registry.Technology;
+
+/**
+ * Produces the {@link LiveEndpoints} of {@link ResolvedService} injection points. There is one handle per service,
+ * resolved in the background when it is first injected, so injection does not wait for etcd, and again when the watch
+ * reports a change below its directory, and periodically in case the watch is not available.
+ */
+@ApplicationScoped
+public class LiveEndpointsProducer implements WatchListener {
+  private static final Logger LOG = LoggerFactory.getLogger(LiveEndpointsProducer.class);
+
+  @Inject
+  private Resolver resolver;
+
+  @Inject
+  private RegistryWatcher watcher;
+
+  @Resource
+  private ManagedScheduledExecutorService scheduler;
+
+  @Inject
+  @ConfigProperty(name = "x1.service.registry.prefix", defaultValue = "/x1")
+  private String prefix;
+
+  @Inject
+  @ConfigProperty(name = "x1.service.registry.stage", defaultValue = "local")
+  private String stage;
+
+  @Inject
+  @ConfigProperty(name = "x1.service.registry.live.interval", defaultValue = "30000")
+  private long interval;
+
+  private final ConcurrentHashMap<String, Handle> handles = new ConcurrentHashMap<>();
+  private ScheduledFuture<?> resolving;
+
+  private record Handle(ResolvedService service, VersionRange range, String stage, LiveEndpoints endpoints) {
+  }
+
+  @PostConstruct
+  public void init() {
+    watcher.addListener(this);
+    resolving = scheduler.scheduleWithFixedDelay(this::resolveAll, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  @Produces
+  @ResolvedService(technology = Technology.REST, value = "", version = "", protocol = Protocol.HTTP)
+  public LiveEndpoints getLiveEndpoints(InjectionPoint injectionPoint) {
+    var service = injectionPoint.getQualifiers().stream().filter(ResolvedService.class::isInstance)
+        .map(ResolvedService.class::cast).findFirst().orElseThrow();
+    var serviceStage = (service.stage().isEmpty() ? stage : service.stage()).toLowerCase();
+    var name = service.technology().name().toLowerCase() + "/" + service.value() + "/" + service.version() + "/"
+        + service.protocol().name().toLowerCase() + "/" + serviceStage;
+    var handle = handles.get(name);
+    if (handle == null) {
+      var range = VersionRange.parse(service.version());
+      var directory = prefix + "/" + service.technology().name().toLowerCase() + "/" + service.value();
+      if (range.isExact()) {
+        directory += "/" + service.version() + "/" + service.protocol().name().toLowerCase() + "/" + serviceStage;
+      }
+      var created = new Handle(service, range, serviceStage, new LiveEndpoints(name, directory));
+      handle = handles.putIfAbsent(name, created);
+      if (handle == null) {
+        handle = created;
+        resolve(handle);
+      }
+    }
+    return handle.endpoints();
+  }
+
+  @Override
+  public void onEvent(Result event) {
+    var node = event.getNode();
+    if (node == null || node.getKey() == null) {
+      return;
+    }
+    var key = node.getKey();
+    for (var handle : handles.values()) {
+      var directory = handle.endpoints().getDirectory();
+      if (key.equals(directory) || key.startsWith(directory + "/") || directory.startsWith(key + "/")) {
+        resolve(handle);
+      }
+    }
+  }
+
+  @Override
+  public void onResync(Result snapshot) {
+    resolveAll();
+  }
+
+  private void resolveAll() {
+    handles.values().forEach(this::resolve);
+  }
+
+  private void resolve(Handle handle) {
+    var service = handle.service();
+    var endpoints = handle.endpoints();
+    var sequence = endpoints.next();
+    var resolved = handle.range().isExact()
+        ? resolver.resolveEndpointsAsync(service.technology(), service.value(), service.version(), handle.stage(),
+            service.protocol())
+        : resolver.resolveEndpointsAsync(service.technology(), service.value(), handle.range(), handle.stage(),
+            service.protocol());
+    resolved.whenComplete((list, t) -> {
+      if (t != null) {
+        LOG.warn("resolving {} failed: {}", endpoints.getService(), t.getMessage());
+      } else {
+        endpoints.update(sequence, list);
+        LOG.trace("{}", endpoints);
+      }
+    });
+  }
+
+  @PreDestroy
+  public void destroy() {
+    if (resolving != null) {
+      resolving.cancel(false);
+    }
+  }
+}
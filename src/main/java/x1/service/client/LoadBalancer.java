@@ -0,0 +1,300 @@
+package x1.service.client;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import x1.service.etcd.Node;
+import x1.service.etcd.Result;
+import x1.service.etcd.WatchListener;
+
+/**
+ * Chooses one instance of a service per call and keeps the load of each instance. Choosing and completing are
+ * lock-free, the statistics live in concurrent maps keyed by the etcd key of the instance.
+ * <p>
+ * Callers report the outcome of their calls. An instance which fails too many calls in a row, or too many of its
+ * recent calls, is ejected for a while and not chosen or resolved; the ejection time doubles with each ejection in a
+ * row. As long as no instance is ejected, filtering costs one volatile read.
+ * <p>
+ * The statistics of an instance are dropped when the watch reports that its key has been deleted or has expired,
+ * and when it is no longer among the nodes of its directory as they are resolved, as the watch may not report it.
+ */
+@ApplicationScoped
+public class LoadBalancer implements WatchListener {
+  private static final Logger LOG = LoggerFactory.getLogger(LoadBalancer.class);
+  private static final String OUTLIER = "x1.service.registry.outlier";
+
+  @Inject
+  private RegistryWatcher watcher;
+
+  @Inject
+  @ConfigProperty(name = "x1.service.registry.balancer.strategy", defaultValue = "round_robin")
+  private String strategyName;
+
+  @Inject
+  @ConfigProperty(name = OUTLIER + ".consecutiveFailures", defaultValue = "5")
+  private int consecutiveFailures = 5;
+
+  @Inject
+  @ConfigProperty(name = OUTLIER + ".errorRate", defaultValue = "50")
+  private int errorRate = 50;
+
+  @Inject
+  @ConfigProperty(name = OUTLIER + ".minCalls", defaultValue = "20")
+  private int minCalls = 20;
+
+  @Inject
+  @ConfigProperty(name = OUTLIER + ".ejectionTime", defaultValue = "30000")
+  private long ejectionTime = 30000;
+
+  @Inject
+  @ConfigProperty(name = OUTLIER + ".maxEjectionTime", defaultValue = "300000")
+  private long maxEjectionTime = 300000;
+
+  private BalancingStrategy strategy;
+  private final ConcurrentHashMap<String, Instance> instances = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, AtomicInteger> tickets = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, List<?>> members = new ConcurrentHashMap<>();
+  private final AtomicLong ejectedUntil = new AtomicLong(System.nanoTime());
+
+  public LoadBalancer() {
+    this.strategy = Strategy.ROUND_ROBIN;
+  }
+
+  public LoadBalancer(BalancingStrategy strategy) {
+    this.strategy = strategy;
+  }
+
+  @PostConstruct
+  public void init() {
+    strategy = getStrategy();
+    LOG.debug("balancing strategy {}", strategy);
+    watcher.addListener(this);
+  }
+
+  /**
+   * @return the configured strategy, round robin with a warning if the name is unknown
+   */
+  private Strategy getStrategy() {
+    for (var value : Strategy.values()) {
+      if (value.name().equalsIgnoreCase(strategyName.strip())) {
+        return value;
+      }
+    }
+    LOG.warn("unknown x1.service.registry.balancer.strategy '{}', expected one of {}, using {}", strategyName,
+        Arrays.toString(Strategy.values()).toLowerCase(), Strategy.ROUND_ROBIN.name().toLowerCase());
+    return Strategy.ROUND_ROBIN;
+  }
+
+  /**
+   * Drops the statistics of deleted or expired instances, and the round-robin sequence of deleted directories
+   */
+  @Override
+  public void onEvent(Result event) {
+    var node = event.getNode();
+    if (node == null || node.getKey() == null) {
+      return;
+    }
+    switch (event.getAction()) {
+    case "delete":
+    case "expire":
+    case "compareAndDelete":
+      var below = node.getKey() + "/";
+      instances.keySet().removeIf(key -> key.equals(node.getKey()) || key.startsWith(below));
+      tickets.keySet().removeIf(key -> key.equals(node.getKey()) || key.startsWith(below));
+      break;
+    default:
+      break;
+    }
+  }
+
+  /**
+   * Keeps only the statistics of the instances which still exist
+   */
+  @Override
+  public void onResync(Result snapshot) {
+    var keys = new HashSet<String>();
+    if (snapshot != null && snapshot.getNode() != null) {
+      collect(snapshot.getNode(), keys);
+    }
+    instances.keySet().retainAll(keys);
+  }
+
+  private void collect(Node node, Set<String> keys) {
+    if (!node.isDir()) {
+      keys.add(node.getKey());
+    } else if (node.getNodes() != null) {
+      node.getNodes().forEach(child -> collect(child, keys));
+    }
+  }
+
+  /**
+   * Chooses an instance with the default strategy
+   *
+   * @return the selection, null if there is no instance
+   */
+  public Selection choose(String service, List<Node> nodes) {
+    return choose(service, nodes, strategy);
+  }
+
+  /**
+   * Chooses an instance with the given strategy
+   *
+   * @param service
+   *          the directory of the service, for the round-robin sequence and to drop the statistics of instances which
+   *          are no longer among its nodes
+   * @return the selection, null if there is no instance
+   */
+  public Selection choose(String service, List<Node> nodes, BalancingStrategy strategy) {
+    if (nodes == null || nodes.isEmpty()) {
+      prune(service, List.of(), Node::getKey);
+      return null;
+    }
+    nodes = filter(service, nodes);
+    var ticket = tickets.computeIfAbsent(service, s -> new AtomicInteger()).getAndIncrement();
+    var index = strategy.choose(new InstanceView(nodes), ticket);
+    var node = nodes.get(index);
+    return new Selection(node, instance(node.getKey()), this);
+  }
+
+  /**
+   * Reports the outcome of a call to the instance with the given etcd key
+   */
+  public void report(String key, boolean success) {
+    report(instance(key), success);
+  }
+
+  void report(Instance instance, boolean success) {
+    if (success) {
+      instance.succeeded();
+      return;
+    }
+    var failures = instance.failed();
+    if ((consecutiveFailures > 0 && failures >= consecutiveFailures)
+        || (errorRate > 0 && instance.getErrorRate(minCalls) >= errorRate)) {
+      var now = System.nanoTime();
+      if (instance.isEjected(now)) {
+        return;
+      }
+      var until = instance.eject(now, TimeUnit.MILLISECONDS.toNanos(ejectionTime),
+          TimeUnit.MILLISECONDS.toNanos(maxEjectionTime));
+      ejectedUntil.accumulateAndGet(until, (a, b) -> b - a > 0 ? b : a);
+      LOG.warn("eject {} for {} ms", instance.getKey(), TimeUnit.NANOSECONDS.toMillis(until - now));
+    }
+  }
+
+  /**
+   * @return the nodes without those of ejected instances, all nodes if all instances are ejected
+   */
+  public List<Node> filter(List<Node> nodes) {
+    return filter(nodes, Node::getKey);
+  }
+
+  /**
+   * Drops the statistics of the instances below the directory which are no longer among its nodes
+   *
+   * @return the nodes without those of ejected instances, all nodes if all instances are ejected
+   */
+  public List<Node> filter(String directory, List<Node> nodes) {
+    prune(directory, nodes, Node::getKey);
+    return filter(nodes);
+  }
+
+  /**
+   * @return the endpoints without those of ejected instances, all endpoints if all instances are ejected
+   */
+  public List<ServiceEndpoint> filterEndpoints(List<ServiceEndpoint> endpoints) {
+    return filter(endpoints, ServiceEndpoint::key);
+  }
+
+  /**
+   * Drops the statistics of the instances below the directory which are no longer among its endpoints
+   *
+   * @return the endpoints without those of ejected instances, all endpoints if all instances are ejected
+   */
+  public List<ServiceEndpoint> filterEndpoints(String directory, List<ServiceEndpoint> endpoints) {
+    prune(directory, endpoints, ServiceEndpoint::key);
+    return filterEndpoints(endpoints);
+  }
+
+  /**
+   * Keeps only the statistics of the instances below the directory which are in the list, and forgets the directory
+   * once it is empty. The resolved lists are shared while the directory is unchanged, so only a new list is compared.
+   */
+  private <T> void prune(String directory, List<T> list, Function<T, String> key) {
+    if (list.isEmpty()) {
+      tickets.remove(directory);
+      if (members.remove(directory) == null) {
+        return;
+      }
+    } else if (members.put(directory, list) == list) {
+      return;
+    }
+    var keys = new HashSet<String>();
+    list.forEach(element -> keys.add(key.apply(element)));
+    var below = directory + "/";
+    instances.keySet().removeIf(k -> k.startsWith(below) && !keys.contains(k));
+  }
+
+  private <T> List<T> filter(List<T> list, Function<T, String> key) {
+    var now = System.nanoTime();
+    if (list.isEmpty() || now - ejectedUntil.get() >= 0) {
+      return list;
+    }
+    var healthy = new ArrayList<T>(list.size());
+    for (var element : list) {
+      var instance = instances.get(key.apply(element));
+      if (instance == null || !instance.isEjected(now)) {
+        healthy.add(element);
+      }
+    }
+    if (healthy.size() == list.size() || healthy.isEmpty()) {
+      return list;
+    }
+    return List.copyOf(healthy);
+  }
+
+  /**
+   * @return the statistics of the instance, created on first use
+   */
+  public Instance instance(String key) {
+    return instances.computeIfAbsent(key, Instance::new);
+  }
+
+  /**
+   * The instances of the nodes, looked up only when the strategy asks for them
+   */
+  private class InstanceView extends AbstractList<Instance> {
+    private final List<Node> nodes;
+
+    InstanceView(List<Node> nodes) {
+      this.nodes = nodes;
+    }
+
+    @Override
+    public Instance get(int index) {
+      return instance(nodes.get(index).getKey());
+    }
+
+    @Override
+    public int size() {
+      return nodes.size();
+    }
+  }
+}
@@ -0,0 +1,211 @@
+package x1.service.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import x1.service.etcd.EtcdClient;
+import x1.service.etcd.Node;
+import x1.service.etcd.Projection;
+import x1.service.etcd.Result;
+import x1.service.etcd.WatchListener;
+
+/**
+ * An in-memory index of all registered instances below the prefix (or below the configured technologies), built from
+ * one recursive read and updated incrementally by the events of a watch. Once it is ready, a lookup is a map lookup
+ * and a service which is not in the index has no instances. The lists of the index are immutable and replaced on
+ * change.
+ */
+public class RegistryIndex implements WatchListener {
+  private static final Logger LOG = LoggerFactory.getLogger(RegistryIndex.class);
+
+  private final String prefix;
+  private final Set<String> technologies;
+  private final boolean enabled;
+  private volatile Map<ServiceKey, List<Node>> index = new ConcurrentHashMap<>();
+  private final CompletableFuture<Void> ready = new CompletableFuture<>();
+
+  /**
+   * @param technologies
+   *          the technologies (lower case) to index, all if empty
+   * @param enabled
+   *          a disabled index is never ready
+   */
+  public RegistryIndex(String prefix, Set<String> technologies, boolean enabled) {
+    this.prefix = prefix;
+    this.technologies = technologies;
+    this.enabled = enabled;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public boolean isReady() {
+    return ready.isDone();
+  }
+
+  /**
+   * @return completes with true when the index is ready, with false after the timeout (ms)
+   */
+  public CompletableFuture<Boolean> awaitReady(long timeout) {
+    if (!enabled) {
+      return CompletableFuture.completedFuture(false);
+    }
+    return ready.thenApply(v -> true).completeOnTimeout(false, timeout, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @return the instances of the service, empty if there are none
+   */
+  public List<Node> get(ServiceKey key) {
+    return index.getOrDefault(key, List.of());
+  }
+
+  public int size() {
+    return index.size();
+  }
+
+  /**
+   * @return the instances by directory, e.g. to be saved in a {@link RegistrySnapshot}
+   */
+  public Map<String, List<Node>> view() {
+    var view = new HashMap<String, List<Node>>();
+    index.forEach((key, nodes) -> view.put(key.toDirectory(prefix), nodes));
+    return view;
+  }
+
+  /**
+   * Builds the index with one recursive read of the prefix, or one per technology
+   */
+  public CompletableFuture<Void> load(EtcdClient etcd) {
+    var roots = technologies.isEmpty() ? List.of(prefix) : technologies.stream().map(t -> prefix + "/" + t).toList();
+    var reads = roots.stream().map(root -> etcd.getAsync(root, Projection.FULL, true)).toList();
+    return CompletableFuture.allOf(reads.toArray(CompletableFuture[]::new)).thenAccept(v -> {
+      var updated = new ConcurrentHashMap<ServiceKey, List<Node>>();
+      for (var read : reads) {
+        var result = read.join();
+        if (result != null) {
+          collect(result.getNode(), updated);
+        }
+      }
+      replace(updated);
+    });
+  }
+
+  @Override
+  public void onResync(Result snapshot) {
+    var updated = new ConcurrentHashMap<ServiceKey, List<Node>>();
+    if (snapshot != null) {
+      collect(snapshot.getNode(), updated);
+    }
+    replace(updated);
+  }
+
+  @Override
+  public void onEvent(Result event) {
+    var node = event.getNode();
+    if (node == null || node.getKey() == null) {
+      return;
+    }
+    switch (event.getAction()) {
+    case "set":
+    case "create":
+    case "update":
+    case "compareAndSwap":
+      if (!node.isDir()) {
+        put(node);
+      }
+      break;
+    default:
+      // delete, expire, compareAndDelete
+      if (node.isDir() || (event.getPrevNode() != null && event.getPrevNode().isDir())) {
+        var dir = node.getKey();
+        index.keySet().removeIf(key -> {
+          var directory = key.toDirectory(prefix);
+          return directory.equals(dir) || directory.startsWith(dir + "/");
+        });
+      } else {
+        remove(node.getKey());
+      }
+      break;
+    }
+  }
+
+  private void replace(Map<ServiceKey, List<Node>> updated) {
+    updated.replaceAll((key, nodes) -> List.copyOf(nodes));
+    index = updated;
+    LOG.debug("indexed {} services below {}", updated.size(), prefix);
+    ready.complete(null);
+  }
+
+  private void collect(Node node, Map<ServiceKey, List<Node>> target) {
+    if (node == null) {
+      return;
+    }
+    if (!node.isDir()) {
+      var key = accept(node.getKey());
+      if (key != null) {
+        target.computeIfAbsent(key, k -> new ArrayList<>()).add(node);
+      }
+      return;
+    }
+    if (node.getNodes() != null) {
+      for (var child : node.getNodes()) {
+        collect(child, target);
+      }
+    }
+  }
+
+  private ServiceKey accept(String nodeKey) {
+    var key = ServiceKey.ofInstance(prefix, nodeKey);
+    if (key == null || (!technologies.isEmpty() && !technologies.contains(key.technology()))) {
+      return null;
+    }
+    return key;
+  }
+
+  private void put(Node node) {
+    var key = accept(node.getKey());
+    if (key == null) {
+      return;
+    }
+    index.compute(key, (k, nodes) -> {
+      var updated = new ArrayList<Node>(nodes != null ? nodes.size() + 1 : 1);
+      var replaced = false;
+      if (nodes != null) {
+        for (var n : nodes) {
+          if (n.getKey().equals(node.getKey())) {
+            updated.add(node);
+            replaced = true;
+          } else {
+            updated.add(n);
+          }
+        }
+      }
+      if (!replaced) {
+        updated.add(node);
+      }
+      return List.copyOf(updated);
+    });
+  }
+
+  private void remove(String nodeKey) {
+    var key = accept(nodeKey);
+    if (key == null) {
+      return;
+    }
+    index.computeIfPresent(key, (k, nodes) -> {
+      var updated = nodes.stream().filter(n -> !n.getKey().equals(nodeKey)).toList();
+      return updated.isEmpty() ? null : updated;
+    });
+  }
+}
@@ -0,0 +1,153 @@
+package x1.service.client;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import x1.service.etcd.Node;
+
+/**
+ * The last known state of the resolved directories, persisted in a compact binary file so a restarted application
+ * can resolve before etcd has answered. The file is replaced atomically and memory-mapped for reading.
+ */
+public class RegistrySnapshot {
+  private static final int MAGIC = 0x58315253;
+  private static final int VERSION = 1;
+
+  private final String prefix;
+  private final long createdAt;
+  private final Map<String, List<Node>> directories;
+
+  public RegistrySnapshot(String prefix, long createdAt, Map<String, List<Node>> directories) {
+    this.prefix = prefix;
+    this.createdAt = createdAt;
+    this.directories = directories;
+  }
+
+  /**
+   * @return the prefix the directories belong to
+   */
+  public String getPrefix() {
+    return prefix;
+  }
+
+  /**
+   * @return the time (ms since the epoch) the snapshot was taken
+   */
+  public long getCreatedAt() {
+    return createdAt;
+  }
+
+  /**
+   * @return the nodes (key, value, modifiedIndex) per directory
+   */
+  public Map<String, List<Node>> getDirectories() {
+    return directories;
+  }
+
+  /**
+   * Writes the snapshot to a temporary file next to the target, forces it to disk and moves it over the target, so
+   * a reader never sees a partial snapshot.
+   */
+  public void write(Path file) throws IOException {
+    var dir = file.toAbsolutePath().getParent();
+    Files.createDirectories(dir);
+    var tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+    try {
+      try (var channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+        var out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        writeString(out, prefix);
+        out.writeLong(createdAt);
+        out.writeInt(directories.size());
+        for (var entry : directories.entrySet()) {
+          writeString(out, entry.getKey());
+          out.writeInt(entry.getValue().size());
+          for (var node : entry.getValue()) {
+            writeString(out, node.getKey());
+            out.writeLong(node.getModifiedIndex());
+            writeString(out, node.getValue());
+          }
+        }
+        out.flush();
+        channel.force(true);
+      }
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  /**
+   * Reads a snapshot from a memory-mapped file
+   *
+   * @throws IOException
+   *           if the file cannot be read or is not a snapshot
+   */
+  public static RegistrySnapshot read(Path file) throws IOException {
+    try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.remaining() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+        throw new IOException("not a registry snapshot: " + file);
+      }
+      var prefix = readString(buffer);
+      var createdAt = buffer.getLong();
+      var count = buffer.getInt();
+      var directories = new HashMap<String, List<Node>>();
+      for (var i = 0; i < count; i++) {
+        var directory = readString(buffer);
+        var size = buffer.getInt();
+        var nodes = new ArrayList<Node>();
+        for (var j = 0; j < size; j++) {
+          var node = new Node();
+          node.setKey(readString(buffer));
+          node.setModifiedIndex(buffer.getLong());
+          node.setValue(readString(buffer));
+          nodes.add(node);
+        }
+        directories.put(directory, List.copyOf(nodes));
+      }
+      return new RegistrySnapshot(prefix, createdAt, directories);
+    } catch (RuntimeException e) {
+      // BufferUnderflowException, IllegalArgumentException of a truncated or corrupt file
+      throw new IOException("corrupt registry snapshot: " + file, e);
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String s) throws IOException {
+    if (s == null) {
+      out.writeInt(-1);
+      return;
+    }
+    var bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    var length = buffer.getInt();
+    if (length < 0) {
+      return null;
+    }
+    if (length > buffer.remaining()) {
+      throw new BufferUnderflowException();
+    }
+    var bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
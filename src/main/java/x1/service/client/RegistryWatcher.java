@@ -0,0 +1,245 @@
+package x1.service.client;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedScheduledExecutorService;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Produces;
+import jakarta.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import x1.service.etcd.EtcdClient;
+import x1.service.etcd.Result;
+import x1.service.etcd.WatchListener;
+import x1.service.etcd.WatchSubscription;
+
+/**
+ * Provides the client-side state of the registry, the {@link DirectoryCache}, the {@link RegistryIndex} and the
+ * {@link VersionIndex}, and keeps it fresh with one recursive watch on the registry prefix. Without watch support the
+ * index is reloaded periodically.
+ * If a snapshot file is configured, the resolved directories are saved to it periodically and loaded on startup, so
+ * they can be served before etcd has answered.
+ */
+@ApplicationScoped
+public class RegistryWatcher {
+  private static final Logger LOG = LoggerFactory.getLogger(RegistryWatcher.class);
+  private static final String CACHE = "x1.service.registry.cache";
+  private static final String BULK = "x1.service.registry.bulk";
+  private static final String SNAPSHOT = "x1.service.registry.snapshot";
+
+  @Inject
+  private EtcdClient etcd;
+
+  @Resource
+  private ManagedScheduledExecutorService scheduler;
+
+  @Inject
+  @ConfigProperty(name = "x1.service.registry.prefix", defaultValue = "/x1")
+  private String prefix;
+
+  @Inject
+  @ConfigProperty(name = CACHE + ".enabled", defaultValue = "true")
+  private boolean enabled;
+
+  @Inject
+  @ConfigProperty(name = CACHE + ".maxSize", defaultValue = "1000")
+  private int maxSize;
+
+  @Inject
+  @ConfigProperty(name = CACHE + ".ttl", defaultValue = "60000")
+  private long ttl;
+
+  @Inject
+  @ConfigProperty(name = CACHE + ".negativeTtl", defaultValue = "5000")
+  private long negativeTtl;
+
+  @Inject
+  @ConfigProperty(name = CACHE + ".softTtl", defaultValue = "30000")
+  private long softTtl;
+
+  @Inject
+  @ConfigProperty(name = BULK + ".enabled", defaultValue = "false")
+  private boolean bulk;
+
+  @Inject
+  @ConfigProperty(name = BULK + ".technologies")
+  private Optional<List<String>> technologies;
+
+  @Inject
+  @ConfigProperty(name = SNAPSHOT + ".file")
+  private Optional<String> snapshotFile;
+
+  @Inject
+  @ConfigProperty(name = SNAPSHOT + ".interval", defaultValue = "60000")
+  private long snapshotInterval;
+
+  private DirectoryCache cache;
+  private RegistryIndex index;
+  private VersionIndex versions;
+  private final List<WatchListener> listeners = new CopyOnWriteArrayList<>();
+  private WatchSubscription watch;
+  private ScheduledFuture<?> saving;
+  private ScheduledFuture<?> nextLoad;
+  private boolean destroyed;
+  private Path snapshot;
+
+  @PostConstruct
+  public void init() {
+    cache = new DirectoryCache(enabled ? maxSize : 0, ttl, negativeTtl, softTtl, scheduler);
+    Set<String> indexed = technologies.orElse(List.of()).stream().map(String::strip).filter(t -> !t.isEmpty())
+        .map(String::toLowerCase).collect(Collectors.toUnmodifiableSet());
+    index = new RegistryIndex(prefix, indexed, bulk);
+    versions = new VersionIndex(prefix);
+    if (!enabled && !bulk) {
+      return;
+    }
+    snapshot = snapshotFile.map(String::strip).filter(f -> !f.isEmpty()).map(Path::of).orElse(null);
+    if (snapshot != null) {
+      restore();
+      saving = scheduler.scheduleWithFixedDelay(this::save, snapshotInterval, snapshotInterval,
+          TimeUnit.MILLISECONDS);
+    }
+    if (etcd.isWatchSupported()) {
+      LOG.debug("watch {} for the resolver", prefix);
+      watch = new WatchSubscription(etcd, prefix, true, new WatchListener() {
+        public void onEvent(Result event) throws InterruptedException {
+          cache.onEvent(event);
+          index.onEvent(event);
+          versions.onEvent(event);
+          for (var listener : listeners) {
+            listener.onEvent(event);
+          }
+        }
+
+        public void onResync(Result snapshot) throws InterruptedException {
+          cache.onResync(snapshot);
+          index.onResync(snapshot);
+          versions.onResync(snapshot);
+          for (var listener : listeners) {
+            listener.onResync(snapshot);
+          }
+        }
+      }).start();
+    } else if (bulk) {
+      scheduleLoad(0);
+    }
+  }
+
+  /**
+   * Adds a listener to the events of the watch on the prefix, called after the cache and the indexes have been
+   * updated
+   */
+  public void addListener(WatchListener listener) {
+    listeners.add(listener);
+  }
+
+  private void restore() {
+    if (!Files.exists(snapshot)) {
+      return;
+    }
+    try {
+      var restored = RegistrySnapshot.read(snapshot);
+      if (!prefix.equals(restored.getPrefix())) {
+        LOG.warn("ignore snapshot {} of prefix {}", snapshot, restored.getPrefix());
+        return;
+      }
+      cache.seed(restored.getDirectories());
+      LOG.info("restored {} directories from snapshot {}, {} s old", restored.getDirectories().size(), snapshot,
+          (System.currentTimeMillis() - restored.getCreatedAt()) / 1000);
+    } catch (IOException e) {
+      LOG.warn("restoring snapshot {} failed: {}", snapshot, e.getMessage());
+    }
+  }
+
+  private void save() {
+    var view = index.isReady() ? index.view() : cache.view();
+    if (view.isEmpty()) {
+      // keep the last known good snapshot
+      return;
+    }
+    try {
+      new RegistrySnapshot(prefix, System.currentTimeMillis(), view).write(snapshot);
+      LOG.trace("saved {} directories to snapshot {}", view.size(), snapshot);
+    } catch (IOException e) {
+      LOG.warn("saving snapshot {} failed: {}", snapshot, e.getMessage());
+    }
+  }
+
+  /**
+   * Schedules the next reload of the index on the managed executor of the container
+   */
+  private synchronized void scheduleLoad(long delay) {
+    if (destroyed) {
+      return;
+    }
+    try {
+      nextLoad = scheduler.schedule(this::load, delay, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      LOG.debug("reloading the registry index stopped");
+    }
+  }
+
+  /**
+   * Reloads the index without waiting for etcd, the next reload is scheduled once this one has completed, so reloads
+   * never overlap
+   */
+  private void load() {
+    index.load(etcd).whenComplete((loaded, e) -> {
+      if (e != null) {
+        LOG.warn("loading the registry index failed: {}", EtcdClient.unwrap(e).getMessage());
+      }
+      scheduleLoad(ttl);
+    });
+  }
+
+  @Produces
+  public DirectoryCache getDirectoryCache() {
+    return cache;
+  }
+
+  @Produces
+  public RegistryIndex getRegistryIndex() {
+    return index;
+  }
+
+  @Produces
+  public VersionIndex getVersionIndex() {
+    return versions;
+  }
+
+  @PreDestroy
+  public void destroy() {
+    if (watch != null) {
+      watch.close();
+    }
+    synchronized (this) {
+      destroyed = true;
+      if (nextLoad != null) {
+        nextLoad.cancel(false);
+      }
+      if (saving != null) {
+        saving.cancel(false);
+      }
+    }
+    if (snapshot != null) {
+      save();
+    }
+    LOG.debug("{}", cache);
+  }
+}
@@ -0,0 +1,52 @@
+package x1.service.client;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import jakarta.enterprise.util.Nonbinding;
+import jakarta.inject.Qualifier;
+
+import x1.service.registry.Protocol;
+import x1.service.registry.Technology;
+
+/**
+ * Qualifies an injected {@link LiveEndpoints} handle with the service it resolves, e.g.
+ *
+ * <pre>
+ * &#64;Inject
+ * &#64;ResolvedService(technology = Technology.REST, value = "com.example.MyResource", version = "1.x",
+ *     protocol = Protocol.HTTPS)
+ * private LiveEndpoints endpoints;
+ * </pre>
+ */
+@Qualifier
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.FIELD, ElementType.METHOD, ElementType.PARAMETER, ElementType.TYPE })
+public @interface ResolvedService {
+  @Nonbinding
+  Technology technology();
+
+  /**
+   * @return the fully qualified name of the service class, which the registrator uses as directory (not the path of
+   *         {@link x1.service.registry.Service#value()})
+   */
+  @Nonbinding
+  String value();
+
+  /**
+   * @return the version or a {@link VersionRange}
+   */
+  @Nonbinding
+  String version();
+
+  @Nonbinding
+  Protocol protocol();
+
+  /**
+   * @return the stage, the configured x1.service.registry.stage if empty
+   */
+  @Nonbinding
+  String stage() default "";
+}
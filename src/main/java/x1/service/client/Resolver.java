@@ -2,10 +2,10 @@ package x1.service.client;
 
 import java.io.IOException;
 import java.io.StringReader;
-import java.net.URI;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 import jakarta.inject.Inject;
 
@@ -13,18 +13,34 @@ import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import x1.service.etcd.Consistency;
 import x1.service.etcd.EtcdClient;
 import x1.service.etcd.Node;
+import x1.service.etcd.Projection;
 import x1.service.registry.Protocol;
 import x1.service.registry.Technology;
 
 public class Resolver {
   private static final Logger LOG = LoggerFactory.getLogger(Resolver.class);
-  private static final String ETCD_SERVICE = "x1.service.registry.etcd";
 
   @Inject
-  @ConfigProperty(name = ETCD_SERVICE, defaultValue = EtcdClient.DEFAULT_ETCD_SERVICE)
-  private URI etcdService;
+  private EtcdClient etcd;
+
+  @Inject
+  private DirectoryCache cache;
+
+  @Inject
+  private LoadBalancer balancer;
+
+  @Inject
+  private RegistryIndex index;
+
+  @Inject
+  private VersionIndex versions;
+
+  @Inject
+  @ConfigProperty(name = "x1.service.registry.bulk.timeout", defaultValue = "2000")
+  private long bulkTimeout;
 
   @Inject
   @ConfigProperty(name = "x1.service.registry.prefix", defaultValue = "/x1")
@@ -37,18 +53,305 @@ public class Resolver {
 
   public List<Node> resolve(Technology technology, String serviceClass, String version, String stage,
       Protocol protocol) {
+    return resolve(technology, serviceClass, version, stage, protocol, etcd.getConsistency());
+  }
+
+  /**
+   * Resolves with the given consistency, e.g. {@link Consistency#QUORUM} for lookups which must see the latest
+   * registrations or {@link Consistency#SERIALIZABLE} for the hot routing path
+   */
+  public List<Node> resolve(Technology technology, String serviceClass, String version, String stage,
+      Protocol protocol, Consistency consistency) {
+    return resolveAsync(technology, serviceClass, version, stage, protocol, consistency).toCompletableFuture().join();
+  }
+
+  public CompletionStage<List<Node>> resolveAsync(Technology technology, Class<?> serviceClass, String version,
+      String stage, Protocol protocol) {
+    return resolveAsync(technology, serviceClass.getName(), version, stage, protocol);
+  }
+
+  public CompletionStage<List<Node>> resolveAsync(Technology technology, String serviceClass, String version,
+      String stage, Protocol protocol) {
+    return resolveAsync(technology, serviceClass, version, stage, protocol, etcd.getConsistency());
+  }
+
+  /**
+   * Resolves without blocking the calling thread. Errors are logged and result in an empty list, as for
+   * {@link #resolve(Technology, String, String, String, Protocol)}. In bulk mode the lookup is answered from the
+   * {@link RegistryIndex}, waiting for the index to be built on startup. Otherwise found directories are served from
+   * the {@link DirectoryCache}, which reads them again in the background once they are older than the soft ttl, and
+   * concurrent misses of the same directory share one read. Until etcd has answered for a directory, its last known
+   * nodes from the {@link RegistrySnapshot} are served, see
+   * {@link #isStale(Technology, String, String, String, Protocol)}. {@link Consistency#QUORUM} lookups always read
+   * from etcd. Instances ejected after failed calls, see {@link #report(Node, boolean)}, are left out.
+   */
+  public CompletionStage<List<Node>> resolveAsync(Technology technology, String serviceClass, String version,
+      String stage, Protocol protocol, Consistency consistency) {
+    var directory = getDirectory(technology, serviceClass, version, stage, protocol);
+    return registered(technology, serviceClass, version, stage, protocol, consistency)
+        .thenApply(nodes -> balancer.filter(directory, nodes));
+  }
+
+  /**
+   * @return all registered nodes, including those of ejected instances, which the balancer leaves out when choosing
+   */
+  private List<Node> registered(Technology technology, String serviceClass, String version, String stage,
+      Protocol protocol) {
+    return registered(technology, serviceClass, version, stage, protocol, etcd.getConsistency()).join();
+  }
+
+  private CompletableFuture<List<Node>> registered(Technology technology, String serviceClass, String version,
+      String stage, Protocol protocol, Consistency consistency) {
+    var directory = getDirectory(technology, serviceClass, version, stage, protocol);
+    if (consistency != Consistency.QUORUM && index.isEnabled()) {
+      var key = ServiceKey.of(technology, serviceClass, version, stage, protocol);
+      if (index.isReady()) {
+        return CompletableFuture.completedFuture(index.get(key));
+      }
+      var stale = cache.getStale(directory);
+      if (stale != null) {
+        return CompletableFuture.completedFuture(stale);
+      }
+      return index.awaitReady(bulkTimeout).thenCompose(
+          ready -> ready ? CompletableFuture.completedFuture(index.get(key)) : lookup(directory, consistency));
+    }
+    return lookup(directory, consistency);
+  }
+
+  private CompletableFuture<List<Node>> lookup(String directory, Consistency consistency) {
+    if (consistency != Consistency.QUORUM) {
+      var cached = cache.get(directory, () -> fetchAsync(directory, consistency));
+      if (cached != null) {
+        return CompletableFuture.completedFuture(cached);
+      }
+    }
+    return miss(directory, consistency);
+  }
+
+  private CompletableFuture<List<Node>> miss(String directory, Consistency consistency) {
+    var stale = consistency != Consistency.QUORUM ? cache.getStale(directory) : null;
+    if (stale != null) {
+      LOG.debug("{} is stale, read it in the background", directory);
+      fetch(directory, consistency);
+      return CompletableFuture.completedFuture(stale);
+    }
+    return fetch(directory, consistency);
+  }
+
+  /**
+   * Reads the directory, sharing a read in flight unless the lookup must see the latest registrations
+   */
+  private CompletableFuture<List<Node>> fetch(String directory, Consistency consistency) {
+    if (consistency == Consistency.QUORUM) {
+      return fetchAsync(directory, consistency);
+    }
+    return cache.coalesce(directory, () -> fetchAsync(directory, consistency));
+  }
+
+  private CompletableFuture<List<Node>> fetchAsync(String directory, Consistency consistency) {
+    var generation = cache.getGeneration(directory);
+    return etcd.getAsync(directory, consistency).handle((result, e) -> {
+      if (e != null) {
+        LOG.error(null, EtcdClient.unwrap(e));
+        var stale = cache.getStale(directory);
+        return stale != null ? stale : List.of();
+      }
+      if (result == null) {
+        cache.putMissing(directory, generation);
+        return List.of();
+      }
+      LOG.trace("get {} -> {}", directory, result);
+      return cache.put(directory, result.getNode().getNodes(), generation);
+    });
+  }
+
+  /**
+   * @return true if the service is answered with the last known nodes of the snapshot, as etcd has not answered for
+   *         it yet
+   */
+  public boolean isStale(Technology technology, String serviceClass, String version, String stage,
+      Protocol protocol) {
+    var directory = getDirectory(technology, serviceClass, version, stage, protocol);
+    if (index.isEnabled() && index.isReady()) {
+      return false;
+    }
+    return cache.isStale(directory);
+  }
+
+  public List<Node> resolve(Technology technology, Class<?> serviceClass, VersionRange range, String stage,
+      Protocol protocol) {
+    return resolve(technology, serviceClass.getName(), range, stage, protocol);
+  }
+
+  /**
+   * Resolves the highest version in the range which has registered instances
+   */
+  public List<Node> resolve(Technology technology, String serviceClass, VersionRange range, String stage,
+      Protocol protocol) {
+    return resolveAsync(technology, serviceClass, range, stage, protocol).toCompletableFuture().join();
+  }
+
+  /**
+   * Resolves the highest version in the range which has registered instances without blocking the calling thread.
+   * The version is picked from the {@link VersionIndex}; until the watch has listed the registry it is picked from
+   * one recursive read of the service class.
+   */
+  public CompletionStage<List<Node>> resolveAsync(Technology technology, String serviceClass, VersionRange range,
+      String stage, Protocol protocol) {
+    if (versions.isReady()) {
+      var version = versions.select(technology, serviceClass, range, stage, protocol);
+      if (version == null) {
+        return CompletableFuture.completedFuture(List.of());
+      }
+      return resolveAsync(technology, serviceClass, version, stage, protocol);
+    }
+    var directory = prefix + "/" + technology.name().toLowerCase() + "/" + serviceClass;
+    var suffix = "/" + protocol.name().toLowerCase() + "/" + stage.toLowerCase();
+    var read = etcd.getAsync(directory, Projection.FULL, true, etcd.getConsistency());
+    return read.<List<Node>> handle((result, e) -> {
+      if (e != null) {
+        LOG.error(null, EtcdClient.unwrap(e));
+        return List.of();
+      }
+      if (result == null || result.getNode().getNodes() == null) {
+        return List.of();
+      }
+      String highest = null;
+      List<Node> nodes = List.of();
+      for (var versionNode : result.getNode().getNodes()) {
+        var version = versionNode.getKey().substring(directory.length() + 1);
+        if (!range.contains(version) || (highest != null && VersionRange.compare(version, highest) <= 0)) {
+          continue;
+        }
+        var instances = find(versionNode, versionNode.getKey() + suffix);
+        if (instances != null && !instances.isEmpty()) {
+          highest = version;
+          nodes = instances;
+        }
+      }
+      return List.copyOf(nodes);
+    }).thenApply(balancer::filter);
+  }
+
+  /**
+   * Resolves the parsed endpoints of the highest version in the range which has registered instances
+   */
+  public CompletionStage<List<ServiceEndpoint>> resolveEndpointsAsync(Technology technology, String serviceClass,
+      VersionRange range, String stage, Protocol protocol) {
+    return resolveAsync(technology, serviceClass, range, stage, protocol).thenApply(cache::toEndpoints);
+  }
+
+  /**
+   * @return the children of the directory below the node, null if there is none
+   */
+  private static List<Node> find(Node node, String directory) {
+    if (node.getKey().equals(directory)) {
+      return node.getNodes();
+    }
+    if (node.getNodes() == null || !directory.startsWith(node.getKey() + "/")) {
+      return null;
+    }
+    for (var child : node.getNodes()) {
+      var found = find(child, directory);
+      if (found != null) {
+        return found;
+      }
+    }
+    return null;
+  }
+
+  public List<ServiceEndpoint> resolveEndpoints(Technology technology, Class<?> serviceClass, String version,
+      String stage, Protocol protocol) {
+    return resolveEndpoints(technology, serviceClass.getName(), version, stage, protocol);
+  }
+
+  public List<ServiceEndpoint> resolveEndpoints(Technology technology, String serviceClass, String version,
+      String stage, Protocol protocol) {
+    return resolveEndpointsAsync(technology, serviceClass, version, stage, protocol, etcd.getConsistency())
+        .toCompletableFuture().join();
+  }
+
+  public CompletionStage<List<ServiceEndpoint>> resolveEndpointsAsync(Technology technology, String serviceClass,
+      String version, String stage, Protocol protocol) {
+    return resolveEndpointsAsync(technology, serviceClass, version, stage, protocol, etcd.getConsistency());
+  }
+
+  /**
+   * Resolves the parsed endpoints without blocking the calling thread. A cached directory is answered with the
+   * endpoints parsed when it was cached.
+   */
+  public CompletionStage<List<ServiceEndpoint>> resolveEndpointsAsync(Technology technology, String serviceClass,
+      String version, String stage, Protocol protocol, Consistency consistency) {
+    if (index.isEnabled()) {
+      return resolveAsync(technology, serviceClass, version, stage, protocol, consistency)
+          .thenApply(cache::toEndpoints);
+    }
     var directory = getDirectory(technology, serviceClass, version, stage, protocol);
-    List<Node> nodes = new ArrayList<>();
-    try (var etcd = new EtcdClient(etcdService)) {
-      var result = etcd.get(directory);
-      if (result != null) {
-        nodes = result.getNode().getNodes();
-        LOG.trace("get {} -> {}", directory, result);
+    if (consistency != Consistency.QUORUM) {
+      var cached = cache.getEndpoints(directory, () -> fetchAsync(directory, consistency));
+      if (cached != null) {
+        return CompletableFuture.completedFuture(balancer.filterEndpoints(directory, cached));
       }
-    } catch (Exception e) {
-      LOG.error(null, e);
     }
-    return nodes;
+    return miss(directory, consistency).thenApply(cache::toEndpoints)
+        .thenApply(endpoints -> balancer.filterEndpoints(directory, endpoints));
+  }
+
+  /**
+   * Reports the outcome of a call to the instance of the node. Instances which fail too often are ejected for a
+   * while, see {@link LoadBalancer}.
+   */
+  public void report(Node node, boolean success) {
+    balancer.report(node.getKey(), success);
+  }
+
+  /**
+   * Reports the outcome of a call to the endpoint
+   */
+  public void report(ServiceEndpoint endpoint, boolean success) {
+    balancer.report(endpoint.key(), success);
+  }
+
+  /**
+   * @return the parsed registration of the node, reused as long as the node has not changed
+   */
+  public ServiceEndpoint getEndpoint(Node node) {
+    return cache.toEndpoint(node);
+  }
+
+  /**
+   * Chooses one instance of the service with the configured strategy. The caller completes the selection when the
+   * call is done, e.g. with try-with-resources.
+   *
+   * @return the selection, null if no instance is registered
+   */
+  public Selection choose(Technology technology, Class<?> serviceClass, String version, String stage,
+      Protocol protocol) {
+    return choose(technology, serviceClass.getName(), version, stage, protocol);
+  }
+
+  public Selection choose(Technology technology, String serviceClass, String version, String stage,
+      Protocol protocol) {
+    var directory = getDirectory(technology, serviceClass, version, stage, protocol);
+    return balancer.choose(directory, registered(technology, serviceClass, version, stage, protocol));
+  }
+
+  /**
+   * Chooses one instance of the service with the given strategy, see {@link Strategy} for the built-in ones
+   *
+   * @return the selection, null if no instance is registered
+   */
+  public Selection choose(Technology technology, String serviceClass, String version, String stage,
+      Protocol protocol, BalancingStrategy strategy) {
+    var directory = getDirectory(technology, serviceClass, version, stage, protocol);
+    return balancer.choose(directory, registered(technology, serviceClass, version, stage, protocol), strategy);
+  }
+
+  /**
+   * @return the cache of resolved directories with its hit and miss counts
+   */
+  public DirectoryCache getCache() {
+    return cache;
   }
 
   private String getDirectory(Technology technology, String serviceClass, String version, String stage,
@@ -57,6 +360,9 @@ public class Resolver {
         + protocol.name().toLowerCase() + "/" + stage.toLowerCase();
   }
 
+  /**
+   * Parses the registration of the node on each call, {@link #getEndpoint(Node)} parses it only once
+   */
   public Properties getProperties(Node node) {
     var props = new Properties();
     try {
@@ -0,0 +1,75 @@
+package x1.service.client;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import x1.service.etcd.Node;
+
+/**
+ * An instance chosen by the {@link LoadBalancer} for one call. The caller reports the completion of the call, so the
+ * calls in flight and the latency of the instance are known to the next choice. Closing the selection completes it
+ * with the time elapsed since the choice, as a success unless the caller has reported a {@link #fail() failure}.
+ */
+public class Selection implements AutoCloseable {
+  private final Node node;
+  private final Instance instance;
+  private final LoadBalancer balancer;
+  private final long start = System.nanoTime();
+  private final AtomicBoolean completed = new AtomicBoolean();
+
+  Selection(Node node, Instance instance, LoadBalancer balancer) {
+    this.node = node;
+    this.instance = instance;
+    this.balancer = balancer;
+    instance.start();
+  }
+
+  /**
+   * @return the registration of the chosen instance
+   */
+  public Node getNode() {
+    return node;
+  }
+
+  public Instance getInstance() {
+    return instance;
+  }
+
+  /**
+   * Completes the call with the time elapsed since the choice
+   */
+  public void complete() {
+    complete(System.nanoTime() - start);
+  }
+
+  /**
+   * Completes the call successfully with the given latency (ns), a negative latency is not recorded. Only the first
+   * completion counts.
+   */
+  public void complete(long nanos) {
+    if (completed.compareAndSet(false, true)) {
+      instance.complete(nanos);
+      balancer.report(instance, true);
+    }
+  }
+
+  /**
+   * Completes the call as failed, e.g. on a connection error or a 5xx response. Failures may eject the instance, see
+   * {@link LoadBalancer#report(String, boolean)}.
+   */
+  public void fail() {
+    if (completed.compareAndSet(false, true)) {
+      instance.complete(-1);
+      balancer.report(instance, false);
+    }
+  }
+
+  @Override
+  public void close() {
+    complete();
+  }
+
+  @Override
+  public String toString() {
+    return "Selection [" + instance + "]";
+  }
+}
@@ -0,0 +1,104 @@
+package x1.service.client;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+
+import x1.service.Constants;
+import x1.service.etcd.Node;
+
+/**
+ * The registration of one service instance, parsed once from the value of its etcd node. The uri is the baseUri of
+ * the service, or protocol://hostName:port if the service is addressed by a JNDI name.
+ *
+ * @param key
+ *          the etcd key of the registration
+ * @param modifiedIndex
+ *          the etcd index of the last change, the endpoint is parsed again if it differs
+ */
+public record ServiceEndpoint(String key, long modifiedIndex, String hostName, Integer port, String protocol,
+    String context, String baseUri, String jndiName, String destination, URI uri) {
+
+  /**
+   * Parses the key=value lines written by the registrator
+   */
+  public static ServiceEndpoint parse(Node node) {
+    String hostName = null;
+    Integer port = null;
+    String protocol = null;
+    String context = null;
+    String baseUri = null;
+    String jndiName = null;
+    String destination = null;
+    var value = node.getValue() != null ? node.getValue() : "";
+    var start = 0;
+    while (start < value.length()) {
+      var end = value.indexOf('\n', start);
+      if (end < 0) {
+        end = value.length();
+      }
+      var line = value.substring(start, end).strip();
+      start = end + 1;
+      var separator = line.indexOf('=');
+      if (line.isEmpty() || line.charAt(0) == '#' || separator < 0) {
+        continue;
+      }
+      var v = line.substring(separator + 1).strip();
+      switch (line.substring(0, separator).strip()) {
+      case Constants.HOST_NAME:
+        hostName = v;
+        break;
+      case Constants.PORT:
+        port = parsePort(v);
+        break;
+      case Constants.PROTOCOL:
+        protocol = v;
+        break;
+      case Constants.CONTEXT:
+        context = v;
+        break;
+      case Constants.BASE_URI:
+        baseUri = v;
+        break;
+      case Constants.JNDI_NAME:
+        jndiName = v;
+        break;
+      case Constants.DESTINATION:
+        destination = v;
+        break;
+      default:
+        break;
+      }
+    }
+    return new ServiceEndpoint(node.getKey(), node.getModifiedIndex(), hostName, port, protocol, context, baseUri,
+        jndiName, destination, toUri(baseUri, protocol, hostName, port));
+  }
+
+  /**
+   * @return true if this endpoint has been parsed from the given revision of the node
+   */
+  public boolean isCurrent(Node node) {
+    return modifiedIndex == node.getModifiedIndex() && key.equals(node.getKey());
+  }
+
+  private static Integer parsePort(String port) {
+    try {
+      return Integer.valueOf(port);
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private static URI toUri(String baseUri, String protocol, String hostName, Integer port) {
+    try {
+      if (baseUri != null) {
+        return new URI(baseUri);
+      }
+      if (protocol != null && hostName != null) {
+        return new URI(protocol, null, hostName, port != null ? port : -1, null, null, null);
+      }
+    } catch (URISyntaxException e) {
+      // no uri
+    }
+    return null;
+  }
+}
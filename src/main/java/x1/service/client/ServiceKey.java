@@ -0,0 +1,35 @@
+package x1.service.client;
+
+import x1.service.registry.Protocol;
+import x1.service.registry.Technology;
+
+/**
+ * Identifies the directory of a service in the registry: prefix/technology/serviceClass/version/protocol/stage
+ */
+public record ServiceKey(String technology, String serviceClass, String version, String protocol, String stage) {
+
+  public static ServiceKey of(Technology technology, String serviceClass, String version, String stage,
+      Protocol protocol) {
+    return new ServiceKey(technology.name().toLowerCase(), serviceClass, version, protocol.name().toLowerCase(),
+        stage.toLowerCase());
+  }
+
+  /**
+   * @return the key of the service of an instance key prefix/technology/serviceClass/version/protocol/stage/host,
+   *         null if the key is not an instance key below the prefix
+   */
+  public static ServiceKey ofInstance(String prefix, String key) {
+    if (!key.startsWith(prefix + "/")) {
+      return null;
+    }
+    var parts = key.substring(prefix.length() + 1).split("/");
+    if (parts.length != 6) {
+      return null;
+    }
+    return new ServiceKey(parts[0], parts[1], parts[2], parts[3], parts[4]);
+  }
+
+  public String toDirectory(String prefix) {
+    return prefix + "/" + technology + "/" + serviceClass + "/" + version + "/" + protocol + "/" + stage;
+  }
+}
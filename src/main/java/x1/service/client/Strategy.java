@@ -0,0 +1,78 @@
+package x1.service.client;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The built-in {@link BalancingStrategy balancing strategies}
+ */
+public enum Strategy implements BalancingStrategy {
+  /** each instance in turn */
+  ROUND_ROBIN {
+    @Override
+    public int choose(List<Instance> instances, int ticket) {
+      return Math.floorMod(ticket, instances.size());
+    }
+  },
+  /** the one with fewer calls in flight of two random instances, the lower latency breaks a tie */
+  POWER_OF_TWO_CHOICES {
+    @Override
+    public int choose(List<Instance> instances, int ticket) {
+      var size = instances.size();
+      if (size == 1) {
+        return 0;
+      }
+      var random = ThreadLocalRandom.current();
+      var a = random.nextInt(size);
+      var b = random.nextInt(size - 1);
+      if (b >= a) {
+        b++;
+      }
+      var first = instances.get(a);
+      var second = instances.get(b);
+      if (first.getInFlight() != second.getInFlight()) {
+        return first.getInFlight() < second.getInFlight() ? a : b;
+      }
+      return first.getLatency() <= second.getLatency() ? a : b;
+    }
+  },
+  /**
+   * a random instance, weighted by the inverse of its latency EWMA times its calls in flight; an instance which has
+   * not been measured yet counts as the fastest, so it is tried soon
+   */
+  EWMA {
+    @Override
+    public int choose(List<Instance> instances, int ticket) {
+      var size = instances.size();
+      if (size == 1) {
+        return 0;
+      }
+      var fastest = Double.MAX_VALUE;
+      for (var instance : instances) {
+        var latency = instance.getLatency();
+        if (latency > 0 && latency < fastest) {
+          fastest = latency;
+        }
+      }
+      if (fastest == Double.MAX_VALUE) {
+        fastest = 1;
+      }
+      var weights = new double[size];
+      var total = 0.0;
+      for (var i = 0; i < size; i++) {
+        var instance = instances.get(i);
+        var latency = instance.getLatency() > 0 ? instance.getLatency() : fastest;
+        weights[i] = 1 / (latency * (instance.getInFlight() + 1));
+        total += weights[i];
+      }
+      var point = ThreadLocalRandom.current().nextDouble(total);
+      for (var i = 0; i < size; i++) {
+        point -= weights[i];
+        if (point < 0) {
+          return i;
+        }
+      }
+      return size - 1;
+    }
+  }
+}
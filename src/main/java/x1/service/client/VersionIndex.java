@@ -0,0 +1,148 @@
+package x1.service.client;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import x1.service.etcd.Node;
+import x1.service.etcd.Result;
+import x1.service.etcd.WatchListener;
+import x1.service.registry.Protocol;
+import x1.service.registry.Technology;
+
+/**
+ * An index of the versions of each service (technology, service class, protocol and stage) which have registered
+ * instances, built from the listing of a recursive watch on the prefix and updated by its events. The versions are
+ * ordered, so the highest version in a {@link VersionRange} is found without a read from etcd.
+ */
+public class VersionIndex implements WatchListener {
+  private static final Logger LOG = LoggerFactory.getLogger(VersionIndex.class);
+
+  private final String prefix;
+  private volatile Map<String, ConcurrentSkipListMap<String, Set<String>>> services = new ConcurrentHashMap<>();
+  private volatile boolean ready;
+
+  public VersionIndex(String prefix) {
+    this.prefix = prefix;
+  }
+
+  /**
+   * @return true once the watch has listed the registry
+   */
+  public boolean isReady() {
+    return ready;
+  }
+
+  /**
+   * @return the highest version in the range with registered instances, null if there is none
+   */
+  public String select(Technology technology, String serviceClass, VersionRange range, String stage,
+      Protocol protocol) {
+    var versions = services.get(service(ServiceKey.of(technology, serviceClass, "", stage, protocol)));
+    if (versions == null) {
+      return null;
+    }
+    for (var version : versions.descendingKeySet()) {
+      if (range.contains(version)) {
+        return version;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public void onResync(Result snapshot) {
+    var updated = new ConcurrentHashMap<String, ConcurrentSkipListMap<String, Set<String>>>();
+    if (snapshot != null) {
+      collect(snapshot.getNode(), updated);
+    }
+    services = updated;
+    ready = true;
+    LOG.debug("indexed the versions of {} services below {}", updated.size(), prefix);
+  }
+
+  @Override
+  public void onEvent(Result event) {
+    var node = event.getNode();
+    if (node == null || node.getKey() == null) {
+      return;
+    }
+    switch (event.getAction()) {
+    case "set":
+    case "create":
+    case "update":
+    case "compareAndSwap":
+      if (!node.isDir()) {
+        add(node.getKey(), services);
+      }
+      break;
+    default:
+      // delete, expire, compareAndDelete
+      if (node.isDir() || (event.getPrevNode() != null && event.getPrevNode().isDir())) {
+        removeBelow(node.getKey() + "/");
+      } else {
+        remove(node.getKey());
+      }
+      break;
+    }
+  }
+
+  private void collect(Node node, Map<String, ConcurrentSkipListMap<String, Set<String>>> target) {
+    if (node == null) {
+      return;
+    }
+    if (!node.isDir()) {
+      add(node.getKey(), target);
+      return;
+    }
+    if (node.getNodes() != null) {
+      for (var child : node.getNodes()) {
+        collect(child, target);
+      }
+    }
+  }
+
+  private void add(String nodeKey, Map<String, ConcurrentSkipListMap<String, Set<String>>> target) {
+    var key = ServiceKey.ofInstance(prefix, nodeKey);
+    if (key == null) {
+      return;
+    }
+    target.computeIfAbsent(service(key), s -> new ConcurrentSkipListMap<>(VersionRange.ORDER)).compute(
+        key.version(), (v, keys) -> {
+          var updated = keys != null ? keys : ConcurrentHashMap.<String> newKeySet();
+          updated.add(nodeKey);
+          return updated;
+        });
+  }
+
+  private void remove(String nodeKey) {
+    var key = ServiceKey.ofInstance(prefix, nodeKey);
+    if (key == null) {
+      return;
+    }
+    var versions = services.get(service(key));
+    if (versions != null) {
+      versions.computeIfPresent(key.version(), (v, keys) -> {
+        keys.remove(nodeKey);
+        return keys.isEmpty() ? null : keys;
+      });
+    }
+  }
+
+  private void removeBelow(String dir) {
+    for (var versions : services.values()) {
+      for (var keys : versions.values()) {
+        keys.removeIf(k -> k.startsWith(dir));
+      }
+      versions.values().removeIf(Set::isEmpty);
+    }
+  }
+
+  private static String service(ServiceKey key) {
+    return key.technology() + "/" + key.serviceClass() + "/" + key.protocol() + "/" + key.stage();
+  }
+}
@@ -0,0 +1,175 @@
+package x1.service.client;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A range of service versions, parsed from
+ * <ul>
+ * <li>an exact version, e.g. <code>1.0</code></li>
+ * <li>a wildcard, e.g. <code>1.x</code>, <code>1.*</code> or <code>*</code> for any version</li>
+ * <li>an interval, e.g. <code>[1.0,2.0)</code>, <code>[1.5,)</code> or <code>(,2.0]</code></li>
+ * </ul>
+ * Versions are compared component by component (split at '.'), numeric components as numbers, others as strings. A
+ * qualifier after the first '-' orders a version below its release, e.g. <code>2.0-SNAPSHOT</code> &lt;
+ * <code>2.0</code>.
+ */
+public final class VersionRange {
+  /**
+   * Orders versions from lowest to highest
+   */
+  public static final Comparator<String> ORDER = VersionRange::compare;
+
+  private final String spec;
+  private final String[] wildcard;
+  private final String lower;
+  private final boolean lowerInclusive;
+  private final String upper;
+  private final boolean upperInclusive;
+
+  private VersionRange(String spec, String[] wildcard, String lower, boolean lowerInclusive, String upper,
+      boolean upperInclusive) {
+    this.spec = spec;
+    this.wildcard = wildcard;
+    this.lower = lower;
+    this.lowerInclusive = lowerInclusive;
+    this.upper = upper;
+    this.upperInclusive = upperInclusive;
+  }
+
+  /**
+   * @throws IllegalArgumentException
+   *           if the range cannot be parsed
+   */
+  public static VersionRange parse(String spec) {
+    var s = spec.strip();
+    if (s.isEmpty() || s.equals("*") || s.equalsIgnoreCase("x")) {
+      return new VersionRange(spec, new String[0], null, false, null, false);
+    }
+    var first = s.charAt(0);
+    if (first == '[' || first == '(') {
+      var last = s.charAt(s.length() - 1);
+      var comma = s.indexOf(',');
+      if ((last != ']' && last != ')') || comma < 0) {
+        throw new IllegalArgumentException("invalid version range: " + spec);
+      }
+      var lower = s.substring(1, comma).strip();
+      var upper = s.substring(comma + 1, s.length() - 1).strip();
+      return new VersionRange(spec, null, lower.isEmpty() ? null : lower, first == '[',
+          upper.isEmpty() ? null : upper, last == ']');
+    }
+    if (s.endsWith(".x") || s.endsWith(".X") || s.endsWith(".*")) {
+      return new VersionRange(spec, components(s.substring(0, s.length() - 2)), null, false, null, false);
+    }
+    return new VersionRange(spec, null, s, true, s, true);
+  }
+
+  /**
+   * @return the range of exactly the given version
+   */
+  public static VersionRange exactly(String version) {
+    return new VersionRange(version, null, version, true, version, true);
+  }
+
+  /**
+   * @return true if the range contains exactly one version
+   */
+  public boolean isExact() {
+    return wildcard == null && lower != null && lower.equals(upper) && lowerInclusive && upperInclusive;
+  }
+
+  /**
+   * @return true if the version is in the range; an exact range only contains its literal version, e.g.
+   *         <code>1.0</code> does not contain <code>1.00</code>, which is registered in a directory of its own
+   */
+  public boolean contains(String version) {
+    if (isExact()) {
+      return lower.equals(version);
+    }
+    if (wildcard != null) {
+      var components = components(version);
+      return components.length >= wildcard.length
+          && Arrays.equals(wildcard, Arrays.copyOf(components, wildcard.length));
+    }
+    if (lower != null) {
+      var c = compareVersions(version, lower);
+      if (c < 0 || (c == 0 && !lowerInclusive)) {
+        return false;
+      }
+    }
+    if (upper != null) {
+      var c = compareVersions(version, upper);
+      if (c > 0 || (c == 0 && !upperInclusive)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Orders versions which are equal by their components, e.g. <code>1.0</code> and <code>1.00</code>, as strings, so
+   * a sorted map keeps both
+   */
+  public static int compare(String a, String b) {
+    var c = compareVersions(a, b);
+    return c != 0 ? c : a.strip().compareTo(b.strip());
+  }
+
+  /**
+   * Compares the releases, then the qualifiers, a version without qualifier is the higher one
+   */
+  private static int compareVersions(String a, String b) {
+    var x = a.strip();
+    var y = b.strip();
+    var i = x.indexOf('-');
+    var j = y.indexOf('-');
+    var c = compareComponents(components(i < 0 ? x : x.substring(0, i)), components(j < 0 ? y : y.substring(0, j)));
+    if (c != 0 || (i < 0 && j < 0)) {
+      return c;
+    }
+    if (i < 0 || j < 0) {
+      return i < 0 ? 1 : -1;
+    }
+    return compareComponents(components(x.substring(i + 1)), components(y.substring(j + 1)));
+  }
+
+  private static int compareComponents(String[] x, String[] y) {
+    for (var i = 0; i < Math.min(x.length, y.length); i++) {
+      var c = compareComponent(x[i], y[i]);
+      if (c != 0) {
+        return c;
+      }
+    }
+    return Integer.compare(x.length, y.length);
+  }
+
+  private static int compareComponent(String a, String b) {
+    if (isNumeric(a) && isNumeric(b)) {
+      var x = stripZeros(a);
+      var y = stripZeros(b);
+      return x.length() != y.length() ? Integer.compare(x.length(), y.length()) : x.compareTo(y);
+    }
+    return a.compareTo(b);
+  }
+
+  private static String[] components(String version) {
+    return version.strip().split("[.-]");
+  }
+
+  private static boolean isNumeric(String s) {
+    return !s.isEmpty() && s.chars().allMatch(Character::isDigit);
+  }
+
+  private static String stripZeros(String s) {
+    var i = 0;
+    while (i < s.length() - 1 && s.charAt(i) == '0') {
+      i++;
+    }
+    return s.substring(i);
+  }
+
+  @Override
+  public String toString() {
+    return spec;
+  }
+}
@@ -0,0 +1,73 @@
+package x1.service.etcd;
+
+import java.util.List;
+
+/**
+ * The outcome of a batch: one {@link Outcome} per operation, in the order of the operations.
+ */
+public class BatchResult {
+  private final List<Outcome> outcomes;
+
+  BatchResult(List<Outcome> outcomes) {
+    this.outcomes = outcomes;
+  }
+
+  /**
+   * The result or the error of one operation
+   */
+  public static class Outcome {
+    private final Operation operation;
+    private final Result result;
+    private final ClientException error;
+
+    Outcome(Operation operation, Result result, ClientException error) {
+      this.operation = operation;
+      this.result = result;
+      this.error = error;
+    }
+
+    public Operation getOperation() {
+      return operation;
+    }
+
+    /**
+     * @return the result, null if the operation failed or the key was not found by a get
+     */
+    public Result getResult() {
+      return result;
+    }
+
+    public ClientException getError() {
+      return error;
+    }
+
+    public boolean isSuccess() {
+      return error == null;
+    }
+
+    @Override
+    public String toString() {
+      return operation + " -> " + (isSuccess() ? result : error.getMessage());
+    }
+  }
+
+  public List<Outcome> getOutcomes() {
+    return outcomes;
+  }
+
+  /**
+   * @return true if all operations have completed without error
+   */
+  public boolean isSuccess() {
+    return outcomes.stream().allMatch(Outcome::isSuccess);
+  }
+
+  public List<Outcome> getFailures() {
+    return outcomes.stream().filter(o -> !o.isSuccess()).toList();
+  }
+
+  @Override
+  public String toString() {
+    return "BatchResult [operations=" + outcomes.size() + ", failures=" + getFailures().size() + "]";
+  }
+}
@@ -0,0 +1,332 @@
+package x1.service.etcd;
+
+public class ClientConfig {
+  // Timeouts (ms)
+  private int socketTimeout = 1000;
+  private int connectTimeout = 1000;
+  private int connectionRequestTimeout = 1000;
+  private int watchTimeout = 60000;
+  private int readTimeout = 1000;
+  private int writeTimeout = 1000;
+
+  // Retries of idempotent requests
+  private int retries = 2;
+  private long retryBackoff = 50;
+  private long maxRetryBackoff = 1000;
+
+  // Hedged reads, disabled with percentile 0
+  private double hedgePercentile = 0;
+  private long hedgeMinDelay = 5;
+
+  // Connection pool
+  private int maxConnections = 20;
+  private int maxConnectionsPerRoute = 10;
+  private long keepAlive = 60000;
+  private int ioThreads = 2;
+
+  // Cluster
+  private boolean discoverMembers = false;
+  private Consistency consistency = Consistency.DEFAULT;
+
+  /**
+   * @return the socketTimeout
+   */
+  public int getSocketTimeout() {
+    return socketTimeout;
+  }
+
+  /**
+   * @param socketTimeout
+   *          the socketTimeout to set
+   */
+  public void setSocketTimeout(int socketTimeout) {
+    this.socketTimeout = socketTimeout;
+  }
+
+  /**
+   * @return the connectTimeout
+   */
+  public int getConnectTimeout() {
+    return connectTimeout;
+  }
+
+  /**
+   * @param connectTimeout
+   *          the connectTimeout to set
+   */
+  public void setConnectTimeout(int connectTimeout) {
+    this.connectTimeout = connectTimeout;
+  }
+
+  /**
+   * @return the connectionRequestTimeout
+   */
+  public int getConnectionRequestTimeout() {
+    return connectionRequestTimeout;
+  }
+
+  /**
+   * @param connectionRequestTimeout
+   *          the connectionRequestTimeout to set
+   */
+  public void setConnectionRequestTimeout(int connectionRequestTimeout) {
+    this.connectionRequestTimeout = connectionRequestTimeout;
+  }
+
+  /**
+   * @return how long (ms) a watch waits for an event before it is re-armed
+   */
+  public int getWatchTimeout() {
+    return watchTimeout;
+  }
+
+  /**
+   * @param watchTimeout
+   *          how long (ms) a watch waits for an event before it is re-armed
+   */
+  public void setWatchTimeout(int watchTimeout) {
+    this.watchTimeout = watchTimeout;
+  }
+
+  /**
+   * @return the socket timeout (ms) of reads
+   */
+  public int getReadTimeout() {
+    return readTimeout;
+  }
+
+  /**
+   * @param readTimeout
+   *          the socket timeout (ms) of reads
+   */
+  public void setReadTimeout(int readTimeout) {
+    this.readTimeout = readTimeout;
+  }
+
+  /**
+   * @return the socket timeout (ms) of writes
+   */
+  public int getWriteTimeout() {
+    return writeTimeout;
+  }
+
+  /**
+   * @param writeTimeout
+   *          the socket timeout (ms) of writes
+   */
+  public void setWriteTimeout(int writeTimeout) {
+    this.writeTimeout = writeTimeout;
+  }
+
+  /**
+   * @return how often a failed idempotent request is repeated
+   */
+  public int getRetries() {
+    return retries;
+  }
+
+  /**
+   * @param retries
+   *          how often a failed idempotent request is repeated
+   */
+  public void setRetries(int retries) {
+    this.retries = retries;
+  }
+
+  /**
+   * @return the initial backoff (ms) before a retry, doubled with each retry and randomized
+   */
+  public long getRetryBackoff() {
+    return retryBackoff;
+  }
+
+  /**
+   * @param retryBackoff
+   *          the initial backoff (ms) before a retry, doubled with each retry and randomized
+   */
+  public void setRetryBackoff(long retryBackoff) {
+    this.retryBackoff = retryBackoff;
+  }
+
+  /**
+   * @return the maximum backoff (ms) before a retry
+   */
+  public long getMaxRetryBackoff() {
+    return maxRetryBackoff;
+  }
+
+  /**
+   * @param maxRetryBackoff
+   *          the maximum backoff (ms) before a retry
+   */
+  public void setMaxRetryBackoff(long maxRetryBackoff) {
+    this.maxRetryBackoff = maxRetryBackoff;
+  }
+
+  /**
+   * @return the latency percentile (e.g. 95) after which a read is sent a second time, 0 disables hedging
+   */
+  public double getHedgePercentile() {
+    return hedgePercentile;
+  }
+
+  /**
+   * @param hedgePercentile
+   *          the latency percentile (e.g. 95) after which a read is sent a second time, 0 disables hedging
+   */
+  public void setHedgePercentile(double hedgePercentile) {
+    this.hedgePercentile = hedgePercentile;
+  }
+
+  /**
+   * @return the minimum delay (ms) before a read is sent a second time
+   */
+  public long getHedgeMinDelay() {
+    return hedgeMinDelay;
+  }
+
+  /**
+   * @param hedgeMinDelay
+   *          the minimum delay (ms) before a read is sent a second time
+   */
+  public void setHedgeMinDelay(long hedgeMinDelay) {
+    this.hedgeMinDelay = hedgeMinDelay;
+  }
+
+  /**
+   * @return the maximum number of pooled connections
+   */
+  public int getMaxConnections() {
+    return maxConnections;
+  }
+
+  /**
+   * @param maxConnections
+   *          the maximum number of pooled connections
+   */
+  public void setMaxConnections(int maxConnections) {
+    this.maxConnections = maxConnections;
+  }
+
+  /**
+   * @return the maximum number of pooled connections per etcd member
+   */
+  public int getMaxConnectionsPerRoute() {
+    return maxConnectionsPerRoute;
+  }
+
+  /**
+   * @param maxConnectionsPerRoute
+   *          the maximum number of pooled connections per etcd member
+   */
+  public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+    this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+  }
+
+  /**
+   * @return how long (ms) an idle connection is kept alive in the pool
+   */
+  public long getKeepAlive() {
+    return keepAlive;
+  }
+
+  /**
+   * @param keepAlive
+   *          how long (ms) an idle connection is kept alive in the pool
+   */
+  public void setKeepAlive(long keepAlive) {
+    this.keepAlive = keepAlive;
+  }
+
+  /**
+   * @return the number of I/O reactor threads
+   */
+  public int getIoThreads() {
+    return ioThreads;
+  }
+
+  /**
+   * @param ioThreads
+   *          the number of I/O reactor threads
+   */
+  public void setIoThreads(int ioThreads) {
+    this.ioThreads = ioThreads;
+  }
+
+  /**
+   * @return true if the members are rediscovered from the cluster
+   */
+  public boolean isDiscoverMembers() {
+    return discoverMembers;
+  }
+
+  /**
+   * @param discoverMembers
+   *          true if the members are rediscovered from the cluster
+   */
+  public void setDiscoverMembers(boolean discoverMembers) {
+    this.discoverMembers = discoverMembers;
+  }
+
+  /**
+   * @return the consistency of reads which do not specify one
+   */
+  public Consistency getConsistency() {
+    return consistency;
+  }
+
+  /**
+   * @param consistency
+   *          the consistency of reads which do not specify one
+   */
+  public void setConsistency(Consistency consistency) {
+    this.consistency = consistency;
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString() {
+    var builder = new StringBuilder();
+    builder.append("ClientConfig [socketTimeout=");
+    builder.append(socketTimeout);
+    builder.append(", connectTimeout=");
+    builder.append(connectTimeout);
+    builder.append(", connectionRequestTimeout=");
+    builder.append(connectionRequestTimeout);
+    builder.append(", watchTimeout=");
+    builder.append(watchTimeout);
+    builder.append(", readTimeout=");
+    builder.append(readTimeout);
+    builder.append(", writeTimeout=");
+    builder.append(writeTimeout);
+    builder.append(", retries=");
+    builder.append(retries);
+    builder.append(", retryBackoff=");
+    builder.append(retryBackoff);
+    builder.append(", maxRetryBackoff=");
+    builder.append(maxRetryBackoff);
+    builder.append(", hedgePercentile=");
+    builder.append(hedgePercentile);
+    builder.append(", hedgeMinDelay=");
+    builder.append(hedgeMinDelay);
+    builder.append(", maxConnections=");
+    builder.append(maxConnections);
+    builder.append(", maxConnectionsPerRoute=");
+    builder.append(maxConnectionsPerRoute);
+    builder.append(", keepAlive=");
+    builder.append(keepAlive);
+    builder.append(", ioThreads=");
+    builder.append(ioThreads);
+    builder.append(", discoverMembers=");
+    builder.append(discoverMembers);
+    builder.append(", consistency=");
+    builder.append(consistency);
+    builder.append("]");
+    return builder.toString();
+  }
+
+}
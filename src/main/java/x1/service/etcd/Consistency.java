@@ -0,0 +1,20 @@
+package x1.service.etcd;
+
+/**
+ * The consistency of a read, traded against its latency and the load on the etcd members.
+ */
+public enum Consistency {
+  /** linearizable: the read goes through the raft quorum and sees every committed write */
+  QUORUM,
+  /** served by the preferred member from its local state, may lag behind the leader shortly */
+  DEFAULT,
+  /** served by any healthy member from its local state, spreads the read load over the cluster */
+  SERIALIZABLE;
+
+  /**
+   * @return true if any member may serve the read, not only the preferred one
+   */
+  public boolean isAnyMember() {
+    return this == SERIALIZABLE;
+  }
+}
@@ -0,0 +1,82 @@
+package x1.service.etcd;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.utils.URIUtils;
+
+/**
+ * An etcd cluster member with its health and the EWMA of its response latency.
+ */
+public class Endpoint {
+  private static final double ALPHA = 0.3;
+  private static final long MIN_QUARANTINE = TimeUnit.SECONDS.toNanos(1);
+  private static final long MAX_QUARANTINE = TimeUnit.SECONDS.toNanos(30);
+
+  private final URI uri;
+  private final HttpHost host;
+  private volatile double latency;
+  private volatile int failures;
+  private volatile long unavailableUntil;
+
+  public Endpoint(URI uri) {
+    this.uri = uri;
+    this.host = URIUtils.extractHost(uri);
+  }
+
+  public URI getUri() {
+    return uri;
+  }
+
+  public HttpHost getHost() {
+    return host;
+  }
+
+  /**
+   * @return the EWMA of the latency in ns, 0 if not measured yet
+   */
+  public double getLatency() {
+    return latency;
+  }
+
+  public boolean isHealthy() {
+    return failures == 0 || System.nanoTime() - unavailableUntil >= 0;
+  }
+
+  synchronized void success(long nanos) {
+    failures = 0;
+    if (nanos >= 0) {
+      latency = latency == 0 ? nanos : ALPHA * nanos + (1 - ALPHA) * latency;
+    }
+  }
+
+  synchronized void success() {
+    success(-1);
+  }
+
+  synchronized void failure() {
+    var count = failures + 1;
+    var quarantine = Math.min(MAX_QUARANTINE, MIN_QUARANTINE << Math.min(count - 1, 5));
+    failures = count;
+    unavailableUntil = System.nanoTime() + quarantine;
+  }
+
+  /*
+   * (non-Javadoc)
+   *
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString() {
+    var builder = new StringBuilder();
+    builder.append("Endpoint [uri=");
+    builder.append(uri);
+    builder.append(", latency=");
+    builder.append(TimeUnit.NANOSECONDS.toMicros((long) latency));
+    builder.append("us, failures=");
+    builder.append(failures);
+    builder.append("]");
+    return builder.toString();
+  }
+}
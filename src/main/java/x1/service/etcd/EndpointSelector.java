@@ -0,0 +1,105 @@
+package x1.service.etcd;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Orders the known etcd members for a request: healthy members by ascending latency first, members in quarantine
+ * last, so a request can fail over to the next candidate.
+ */
+public class EndpointSelector {
+  private static final long REFRESH_INTERVAL = TimeUnit.SECONDS.toNanos(30);
+  private static final Comparator<Endpoint> BY_LATENCY = Comparator.comparingDouble(Endpoint::getLatency);
+
+  private final List<Endpoint> configured;
+  private volatile List<Endpoint> endpoints;
+  private final AtomicInteger next = new AtomicInteger();
+  private final AtomicLong lastRefresh = new AtomicLong(System.nanoTime() - REFRESH_INTERVAL);
+
+  public EndpointSelector(List<URI> uris) {
+    if (uris.isEmpty()) {
+      throw new IllegalArgumentException("no etcd members");
+    }
+    this.configured = uris.stream().map(Endpoint::new).toList();
+    this.endpoints = configured;
+  }
+
+  public List<Endpoint> getEndpoints() {
+    return endpoints;
+  }
+
+  /**
+   * @return the healthy member with the lowest latency, or the first member if none is healthy
+   */
+  public Endpoint first() {
+    return candidates().get(0);
+  }
+
+  /**
+   * @return all members in the order they should be tried
+   */
+  public List<Endpoint> candidates() {
+    var current = endpoints;
+    if (current.size() == 1) {
+      return current;
+    }
+    var healthy = new ArrayList<Endpoint>(current.size());
+    var unhealthy = new ArrayList<Endpoint>();
+    for (var endpoint : current) {
+      (endpoint.isHealthy() ? healthy : unhealthy).add(endpoint);
+    }
+    healthy.sort(BY_LATENCY);
+    healthy.addAll(unhealthy);
+    return healthy;
+  }
+
+  /**
+   * @return all members in the order they should be tried, starting with the next healthy member in round-robin
+   *         order, so reads which any member may serve are spread over the cluster
+   */
+  public List<Endpoint> spread() {
+    var current = endpoints;
+    if (current.size() == 1) {
+      return current;
+    }
+    var healthy = new ArrayList<Endpoint>(current.size());
+    var unhealthy = new ArrayList<Endpoint>();
+    for (var endpoint : current) {
+      (endpoint.isHealthy() ? healthy : unhealthy).add(endpoint);
+    }
+    if (!healthy.isEmpty()) {
+      Collections.rotate(healthy, -Math.floorMod(next.getAndIncrement(), healthy.size()));
+    }
+    healthy.addAll(unhealthy);
+    return healthy;
+  }
+
+  /**
+   * Replaces the members with the discovered client URLs, keeping the statistics of already known members. An empty
+   * list restores the configured members.
+   */
+  public void update(List<URI> uris) {
+    var current = endpoints;
+    var source = uris.isEmpty() ? configured.stream().map(Endpoint::getUri).toList() : uris;
+    var updated = new ArrayList<Endpoint>(source.size());
+    for (var uri : source) {
+      updated.add(current.stream().filter(e -> e.getUri().equals(uri)).findFirst().orElseGet(() -> new Endpoint(uri)));
+    }
+    endpoints = List.copyOf(updated);
+  }
+
+  /**
+   * @return true at most once per refresh interval, to rate-limit member discovery
+   */
+  boolean shouldRefresh() {
+    var now = System.nanoTime();
+    var last = lastRefresh.get();
+    return now - last >= REFRESH_INTERVAL && lastRefresh.compareAndSet(last, now);
+  }
+}
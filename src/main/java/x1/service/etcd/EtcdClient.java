@@ -1,9 +1,20 @@
 package x1.service.etcd;
 
 import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
 import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import jakarta.ws.rs.core.Response.Status;
 import jakarta.ws.rs.core.UriBuilder;
@@ -13,67 +24,233 @@ import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
 import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.conn.ConnectTimeoutException;
 import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Charsets;
 import com.google.common.collect.Lists;
-import com.google.common.util.concurrent.AsyncFunction;
-import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
-import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.SettableFuture;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.MalformedJsonException;
 
 public class EtcdClient implements AutoCloseable {
   public static final String DEFAULT_ETCD_SERVICE = "http://127.0.0.1:4001";
+  private static final Logger LOG = LoggerFactory.getLogger(EtcdClient.class);
   private static final String PATH_KEYS = "v2/keys";
+  private static final String PATH_MEMBERS = "/v2/members";
+  private static final String HEADER_ETCD_INDEX = "X-Etcd-Index";
   private static final Integer ECODE_KEY_NOT_FOUND = 100;
-  private final CloseableHttpAsyncClient httpClient = buildDefaultHttpClient();
-  private final Gson gson = new GsonBuilder().create();
-  private final URI baseUri;
-
-  private static CloseableHttpAsyncClient buildDefaultHttpClient() {
-    var requestConfig = RequestConfig.custom().setSocketTimeout(1000).setConnectTimeout(1000)
-        .setConnectionRequestTimeout(1000).build();
-    var httpClient = HttpAsyncClients.custom().setDefaultRequestConfig(requestConfig).build();
+  private final CloseableHttpAsyncClient httpClient;
+  private final ResultDecoder decoder = new ResultDecoder();
+  private final EndpointSelector endpoints;
+  private final boolean discoverMembers;
+  private final Consistency consistency;
+  private final RequestConfig watchConfig;
+  private final RequestConfig readConfig;
+  private final RequestConfig writeConfig;
+  private final int retries;
+  private final long retryBackoff;
+  private final long maxRetryBackoff;
+  private final double hedgePercentile;
+  private final long hedgeMinDelay;
+  private final LatencyHistogram readLatency = new LatencyHistogram();
+
+  private static RequestConfig buildRequestConfig(ClientConfig config) {
+    return RequestConfig.custom().setSocketTimeout(config.getSocketTimeout())
+        .setConnectTimeout(config.getConnectTimeout())
+        .setConnectionRequestTimeout(config.getConnectionRequestTimeout()).build();
+  }
+
+  private static CloseableHttpAsyncClient buildHttpClient(ClientConfig config, RequestConfig requestConfig) {
+    var ioReactorConfig = IOReactorConfig.custom().setIoThreadCount(config.getIoThreads())
+        .setConnectTimeout(config.getConnectTimeout()).setSoKeepAlive(true).build();
+    var keepAlive = config.getKeepAlive();
+    var httpClient = HttpAsyncClients.custom().setDefaultRequestConfig(requestConfig)
+        .setDefaultIOReactorConfig(ioReactorConfig).setMaxConnTotal(config.getMaxConnections())
+        .setMaxConnPerRoute(config.getMaxConnectionsPerRoute())
+        .setKeepAliveStrategy((response, context) -> keepAlive).build();
     httpClient.start();
     return httpClient;
   }
 
   public EtcdClient(URI baseUri) {
-    this.baseUri = baseUri;
+    this(baseUri, new ClientConfig());
+  }
+
+  public EtcdClient(URI baseUri, ClientConfig config) {
+    this(List.of(baseUri), config);
+  }
+
+  /**
+   * Creates a client for the given cluster members with a pooled connection manager, which is meant to be shared and
+   * closed only when the application shuts down.
+   */
+  public EtcdClient(List<URI> members, ClientConfig config) {
+    this.endpoints = new EndpointSelector(members);
+    this.discoverMembers = config.isDiscoverMembers();
+    this.consistency = config.getConsistency();
+    var requestConfig = buildRequestConfig(config);
+    this.watchConfig = RequestConfig.copy(requestConfig).setSocketTimeout(config.getWatchTimeout()).build();
+    this.readConfig = RequestConfig.copy(requestConfig).setSocketTimeout(config.getReadTimeout()).build();
+    this.writeConfig = RequestConfig.copy(requestConfig).setSocketTimeout(config.getWriteTimeout()).build();
+    this.retries = config.getRetries();
+    this.retryBackoff = config.getRetryBackoff();
+    this.maxRetryBackoff = config.getMaxRetryBackoff();
+    this.hedgePercentile = config.getHedgePercentile();
+    this.hedgeMinDelay = TimeUnit.MILLISECONDS.toNanos(config.getHedgeMinDelay());
+    this.httpClient = buildHttpClient(config, requestConfig);
+  }
+
+  /**
+   * @return the URI of the member which is currently preferred
+   */
+  public URI getBaseUri() {
+    return endpoints.first().getUri();
+  }
+
+  /**
+   * @return the known cluster members
+   */
+  public List<Endpoint> getEndpoints() {
+    return endpoints.getEndpoints();
+  }
+
+  /**
+   * @return the consistency of reads which do not specify one
+   */
+  public Consistency getConsistency() {
+    return consistency;
   }
 
   /**
    * Retrieves a key. Returns null if not found.
    */
   public Result get(String key) throws ClientException {
-    var uri = buildKeyUri(PATH_KEYS, key).build();
-    var request = new HttpGet(uri);
+    return await(getAsync(key));
+  }
+
+  /**
+   * Retrieves a key, decoding only the fields selected by the projection. Returns null if not found.
+   */
+  public Result get(String key, Projection projection) throws ClientException {
+    return await(getAsync(key, projection));
+  }
+
+  /**
+   * Retrieves a key asynchronously. Completes with null if not found.
+   */
+  public CompletableFuture<Result> getAsync(String key) {
+    return getAsync(key, Projection.FULL);
+  }
+
+  /**
+   * Retrieves a key asynchronously, decoding only the fields selected by the projection. Completes with null if not
+   * found.
+   */
+  public CompletableFuture<Result> getAsync(String key, Projection projection) {
+    return getAsync(key, projection, false);
+  }
+
+  /**
+   * Retrieves a key, or the whole subtree if recursive. Returns null if not found.
+   */
+  public Result get(String key, Projection projection, boolean recursive) throws ClientException {
+    return await(getAsync(key, projection, recursive));
+  }
+
+  /**
+   * Retrieves a key, or the whole subtree if recursive, asynchronously. Completes with null if not found.
+   */
+  public CompletableFuture<Result> getAsync(String key, Projection projection, boolean recursive) {
+    return getAsync(key, projection, recursive, consistency);
+  }
+
+  /**
+   * Retrieves a key with the given consistency
+   */
+  public Result get(String key, Consistency consistency) throws ClientException {
+    return await(getAsync(key, consistency));
+  }
+
+  /**
+   * Retrieves a key with the given consistency asynchronously. Completes with null if not found.
+   */
+  public CompletableFuture<Result> getAsync(String key, Consistency consistency) {
+    return getAsync(key, Projection.FULL, false, consistency);
+  }
+
+  /**
+   * Retrieves a key, or the whole subtree if recursive, with the given consistency
+   */
+  public Result get(String key, Projection projection, boolean recursive, Consistency consistency)
+      throws ClientException {
+    return await(getAsync(key, projection, recursive, consistency));
+  }
 
-    var result = syncExecute(request, new Status[] { Status.OK, Status.NOT_FOUND }, ECODE_KEY_NOT_FOUND);
-    if (result.isError() && ECODE_KEY_NOT_FOUND.equals(result.getErrorCode())) {
-      return null;
+  /**
+   * Retrieves a key, or the whole subtree if recursive, with the given consistency asynchronously. Completes with
+   * null if not found.
+   */
+  public CompletableFuture<Result> getAsync(String key, Projection projection, boolean recursive,
+      Consistency consistency) {
+    return fetchAsync(key, projection, recursive, consistency).thenApply(result -> {
+      if (result.isError() && ECODE_KEY_NOT_FOUND.equals(result.getErrorCode())) {
+        return null;
+      }
+      return result;
+    });
+  }
+
+  /**
+   * Retrieves a key, a missing key results in the error result (which carries the current etcd index)
+   */
+  CompletableFuture<Result> fetchAsync(String key, Projection projection, boolean recursive) {
+    return fetchAsync(key, projection, recursive, consistency);
+  }
+
+  CompletableFuture<Result> fetchAsync(String key, Projection projection, boolean recursive,
+      Consistency consistency) {
+    var builder = buildKeyUri(PATH_KEYS, key);
+    if (recursive) {
+      builder = builder.queryParam("recursive", true);
     }
-    return result;
+    if (consistency == Consistency.QUORUM) {
+      builder = builder.queryParam("quorum", true);
+    }
+    var request = new HttpGet(builder.build());
+
+    return asyncExecute(request, projection, true, consistency, new Status[] { Status.OK, Status.NOT_FOUND },
+        ECODE_KEY_NOT_FOUND);
   }
 
   /**
    * Deletes the given key
    */
   public Result delete(String key) throws ClientException {
+    return await(deleteAsync(key));
+  }
+
+  /**
+   * Deletes the given key asynchronously
+   */
+  public CompletableFuture<Result> deleteAsync(String key) {
     var uri = buildKeyUri(PATH_KEYS, key).build();
     var request = new HttpDelete(uri);
 
-    return syncExecute(request, new Status[] { Status.OK, Status.NOT_FOUND });
+    return asyncExecute(request, new Status[] { Status.OK, Status.NOT_FOUND });
   }
 
   /**
@@ -88,49 +265,123 @@ public class EtcdClient implements AutoCloseable {
    */
 
   public Result set(String key, String value, Integer ttl) throws ClientException {
+    return await(setAsync(key, value, ttl));
+  }
+
+  /**
+   * Sets a key to a new value asynchronously
+   */
+  public CompletableFuture<Result> setAsync(String key, String value) {
+    return setAsync(key, value, null);
+  }
+
+  /**
+   * Sets a key to a new value with an (optional) ttl asynchronously
+   */
+  public CompletableFuture<Result> setAsync(String key, String value, Integer ttl) {
     List<BasicNameValuePair> data = Lists.newArrayList(new BasicNameValuePair("value", value));
     if (ttl != null) {
       data.add(new BasicNameValuePair("ttl", Integer.toString(ttl)));
     }
 
-    return set0(key, data, new Status[] { Status.OK, Status.CREATED });
+    return set0(key, data, true, new Status[] { Status.OK, Status.CREATED });
+  }
+
+  /**
+   * Refreshes the ttl of an existing key without changing its value, see {@link #refreshAsync(String, int)}
+   */
+  public Result refresh(String key, int ttl) throws ClientException {
+    return await(refreshAsync(key, ttl));
+  }
+
+  /**
+   * Refreshes the ttl of an existing key asynchronously. The value is not sent again and watchers are not notified.
+   * Completes with the error result 100 (key not found) if the key does not exist (anymore).
+   */
+  public CompletableFuture<Result> refreshAsync(String key, int ttl) {
+    List<BasicNameValuePair> data = Lists.newArrayList(new BasicNameValuePair("refresh", "true"),
+        new BasicNameValuePair("prevExist", "true"), new BasicNameValuePair("ttl", Integer.toString(ttl)));
+    return set0(key, data, true, new Status[] { Status.OK, Status.NOT_FOUND }, ECODE_KEY_NOT_FOUND);
+  }
+
+  /**
+   * Refreshes the ttl of an existing key asynchronously, if it has not been modified since prevIndex. Completes with
+   * the error result 101 (compare failed) if it has been modified, or 100 (key not found) if it does not exist.
+   */
+  public CompletableFuture<Result> refreshAsync(String key, int ttl, long prevIndex) {
+    List<BasicNameValuePair> data = Lists.newArrayList(new BasicNameValuePair("refresh", "true"),
+        new BasicNameValuePair("prevIndex", Long.toString(prevIndex)),
+        new BasicNameValuePair("ttl", Integer.toString(ttl)));
+    // not idempotent, a refresh changes the modifiedIndex
+    return set0(key, data, false, new Status[] { Status.OK, Status.NOT_FOUND, Status.PRECONDITION_FAILED },
+        ECODE_KEY_NOT_FOUND, 101);
   }
 
   /**
    * Creates a directory
    */
   public Result createDirectory(String key) throws ClientException {
+    return await(createDirectoryAsync(key));
+  }
+
+  /**
+   * Creates a directory asynchronously
+   */
+  public CompletableFuture<Result> createDirectoryAsync(String key) {
     List<BasicNameValuePair> data = Lists.newArrayList(new BasicNameValuePair("dir", "true"));
-    return set0(key, data, new Status[] { Status.OK, Status.CREATED });
+    // a repeated create fails, as the directory exists already
+    return set0(key, data, false, new Status[] { Status.OK, Status.CREATED });
   }
 
   /**
    * Lists a directory
    */
   public List<Node> listDirectory(String key) throws ClientException {
-    var result = get(key);
-    if (result == null || result.getNode() == null) {
-      return Lists.newArrayList();
-    }
-    return result.getNode().getNodes();
+    return await(listDirectoryAsync(key));
+  }
+
+  /**
+   * Lists a directory asynchronously
+   */
+  public CompletableFuture<List<Node>> listDirectoryAsync(String key) {
+    return getAsync(key).thenApply(result -> {
+      if (result == null || result.getNode() == null) {
+        return Lists.newArrayList();
+      }
+      return result.getNode().getNodes();
+    });
   }
 
   /**
    * Delete a directory
    */
   public Result deleteDirectory(String key) throws ClientException {
+    return await(deleteDirectoryAsync(key));
+  }
+
+  /**
+   * Delete a directory asynchronously
+   */
+  public CompletableFuture<Result> deleteDirectoryAsync(String key) {
     var uri = buildKeyUri(PATH_KEYS, key).queryParam("dir", "true").build();
     var request = new HttpDelete(uri);
-    return syncExecute(request, new Status[] { Status.ACCEPTED });
+    return asyncExecute(request, new Status[] { Status.ACCEPTED });
   }
 
   /**
    * Sets a key to a new value, if the value is a specified value
    */
   public Result cas(String key, String prevValue, String value) throws ClientException {
+    return await(casAsync(key, prevValue, value));
+  }
+
+  /**
+   * Sets a key to a new value asynchronously, if the value is a specified value
+   */
+  public CompletableFuture<Result> casAsync(String key, String prevValue, String value) {
     List<BasicNameValuePair> data = Lists.newArrayList(new BasicNameValuePair("value", value),
         new BasicNameValuePair("prevValue", prevValue));
-    return set0(key, data, new Status[] { Status.OK, Status.PRECONDITION_FAILED }, 101);
+    return set0(key, data, false, new Status[] { Status.OK, Status.PRECONDITION_FAILED }, 101);
   }
 
   /**
@@ -144,62 +395,294 @@ public class EtcdClient implements AutoCloseable {
    * Watches the given subtree
    */
   public ListenableFuture<Result> watch(String key, Long index, boolean recursive) {
+    final SettableFuture<Result> future = SettableFuture.create();
+    watchAsync(key, index, recursive).whenComplete((result, t) -> {
+      if (t == null) {
+        future.set(result);
+      } else {
+        future.setException(unwrap(t));
+      }
+    });
+    return future;
+  }
+
+  /**
+   * @return true if {@link #watchAsync(String, Long, boolean)} is supported, i.e. a {@link WatchSubscription} can be
+   *         used
+   */
+  public boolean isWatchSupported() {
+    return true;
+  }
+
+  /**
+   * Watches the given subtree
+   */
+  public CompletableFuture<Result> watchAsync(String key, Long index, boolean recursive) {
     var builder = buildKeyUri(PATH_KEYS, key).queryParam("wait", "true").queryParam("recursive", recursive);
     if (index != null) {
       builder = builder.queryParam("waitIndex", index);
     }
     var uri = builder.build();
     var request = new HttpGet(uri);
+    request.setConfig(watchConfig);
     return asyncExecute(request, new Status[] { Status.OK });
   }
 
+  /**
+   * Runs the operations concurrently, with at most maxInFlight operations in flight at a time
+   */
+  public BatchResult batch(List<Operation> operations, int maxInFlight) throws ClientException {
+    return await(batchAsync(operations, maxInFlight));
+  }
+
+  /**
+   * Runs the operations concurrently, with at most maxInFlight operations in flight at a time, for at most timeout ms
+   */
+  public BatchResult batch(List<Operation> operations, int maxInFlight, long timeout) throws ClientException {
+    return await(batchAsync(operations, maxInFlight, timeout));
+  }
+
+  /**
+   * Runs the operations concurrently, with at most maxInFlight operations in flight at a time. The future completes
+   * when all operations have completed, a failed operation is reported in its outcome and does not stop the batch.
+   */
+  public CompletableFuture<BatchResult> batchAsync(List<Operation> operations, int maxInFlight) {
+    return batchAsync(operations, maxInFlight, 0);
+  }
+
+  /**
+   * Runs the operations concurrently, with at most maxInFlight operations in flight at a time. The future completes
+   * when all operations have completed or the timeout (ms, 0 for none) has expired. Operations which have not
+   * completed by then are reported as failed and no further operations are started.
+   */
+  public CompletableFuture<BatchResult> batchAsync(List<Operation> operations, int maxInFlight, long timeout) {
+    var batch = new Batch(operations);
+    if (operations.isEmpty()) {
+      batch.future.complete(new BatchResult(List.of()));
+      return batch.future;
+    }
+    if (timeout > 0) {
+      CompletableFuture.delayedExecutor(timeout, TimeUnit.MILLISECONDS).execute(batch::expire);
+    }
+    for (var i = 0; i < Math.min(Math.max(1, maxInFlight), operations.size()); i++) {
+      startNext(batch);
+    }
+    return batch.future;
+  }
+
+  /**
+   * Starts the next operation, and the one after it as long as the operations complete right away, e.g. when they
+   * fail before a request is sent. The loop keeps the stack flat, only an operation which is still in flight
+   * continues on completion.
+   */
+  private void startNext(Batch batch) {
+    while (true) {
+      var i = batch.next.getAndIncrement();
+      if (i >= batch.operations.size() || batch.future.isDone()) {
+        return;
+      }
+      var operation = batch.operations.get(i);
+      CompletableFuture<Result> future;
+      try {
+        future = operation.execute(this);
+      } catch (RuntimeException e) {
+        future = CompletableFuture.failedFuture(e);
+      }
+      if (!future.isDone()) {
+        future.whenComplete((result, t) -> {
+          if (batch.complete(i, outcome(operation, result, t))) {
+            startNext(batch);
+          }
+        });
+        return;
+      }
+      if (!batch.complete(i, future.handle((result, t) -> outcome(operation, result, t)).join())) {
+        return;
+      }
+    }
+  }
+
+  private static BatchResult.Outcome outcome(Operation operation, Result result, Throwable t) {
+    return new BatchResult.Outcome(operation, t == null ? result : null, t == null ? null : unwrap(t));
+  }
+
+  /**
+   * The state of a running batch
+   */
+  private static class Batch {
+    private final List<Operation> operations;
+    private final BatchResult.Outcome[] outcomes;
+    private final AtomicInteger next = new AtomicInteger();
+    private final CompletableFuture<BatchResult> future = new CompletableFuture<>();
+    private int remaining;
+
+    Batch(List<Operation> operations) {
+      this.operations = operations;
+      this.outcomes = new BatchResult.Outcome[operations.size()];
+      this.remaining = operations.size();
+    }
+
+    /**
+     * @return true if the batch is still running, false if it is done or has expired
+     */
+    synchronized boolean complete(int i, BatchResult.Outcome outcome) {
+      if (outcomes[i] != null) {
+        return false;
+      }
+      outcomes[i] = outcome;
+      if (--remaining == 0) {
+        future.complete(new BatchResult(List.of(outcomes)));
+        return false;
+      }
+      return true;
+    }
+
+    /**
+     * Fails all operations which have not completed yet
+     */
+    synchronized void expire() {
+      if (future.isDone()) {
+        return;
+      }
+      for (var i = 0; i < outcomes.length; i++) {
+        if (outcomes[i] == null) {
+          outcomes[i] = new BatchResult.Outcome(operations.get(i), null,
+              new ClientException("deadline exceeded", Status.REQUEST_TIMEOUT));
+        }
+      }
+      remaining = 0;
+      future.complete(new BatchResult(List.of(outcomes)));
+    }
+  }
+
   /**
    * Gets the etcd version
    */
   public String version() throws ClientException {
-    var uri = baseUri.resolve("/version");
+    return await(versionAsync());
+  }
+
+  /**
+   * Gets the etcd version asynchronously
+   */
+  public CompletableFuture<String> versionAsync() {
+    var uri = URI.create("/version");
 
     var request = new HttpGet(uri);
 
     // Technically not JSON, but it'll work
     // This call is the odd one out
-    var s = syncExecuteJson(request, Status.OK);
-    if (s.httpStatusCode != Status.OK) {
-      throw new ClientException("Error while fetching versions", s.httpStatusCode);
+    return asyncExecuteHttp(request, true, false).thenApply(httpResponse -> {
+      try {
+        var s = extractJsonResponse(httpResponse, new Status[] { Status.OK });
+        if (s.httpStatusCode != Status.OK) {
+          throw new ClientException("Error while fetching versions", s.httpStatusCode);
+        }
+        return s.json;
+      } catch (ClientException e) {
+        throw new CompletionException(e);
+      }
+    });
+  }
+
+  /**
+   * Replaces the known members with the client URLs listed by the cluster
+   */
+  public List<URI> refreshMembers() throws ClientException {
+    return await(refreshMembersAsync());
+  }
+
+  /**
+   * Replaces the known members with the client URLs listed by the cluster asynchronously
+   */
+  public CompletableFuture<List<URI>> refreshMembersAsync() {
+    return asyncExecuteJson(buildMembersRequest(), Status.OK).thenApply(json -> {
+      var members = parseMembers(json);
+      endpoints.update(members);
+      return members;
+    });
+  }
+
+  protected HttpUriRequest buildMembersRequest() {
+    return new HttpGet(URI.create(PATH_MEMBERS));
+  }
+
+  private List<URI> parseMembers(String json) {
+    var members = new ArrayList<URI>();
+    try {
+      for (var member : JsonParser.parseString(json).getAsJsonObject().getAsJsonArray("members")) {
+        var clientUrls = member.getAsJsonObject().getAsJsonArray("clientURLs");
+        if (clientUrls != null) {
+          clientUrls.forEach(url -> members.add(URI.create(url.getAsString())));
+        }
+      }
+    } catch (RuntimeException e) {
+      LOG.warn("Error parsing members: {}", e.getMessage());
     }
-    return s.json;
+    return members;
   }
 
-  private Result set0(String key, List<BasicNameValuePair> data, Status[] httpErrorCodes, Integer... expectedErrorCodes)
-      throws ClientException {
+  private CompletableFuture<Result> set0(String key, List<BasicNameValuePair> data, boolean idempotent,
+      Status[] httpErrorCodes, Integer... expectedErrorCodes) {
     var uri = buildKeyUri(PATH_KEYS, key).build();
     var request = new HttpPut(uri);
     var entity = new UrlEncodedFormEntity(data, Charsets.UTF_8);
     request.setEntity(entity);
-    return syncExecute(request, httpErrorCodes, expectedErrorCodes);
+    return asyncExecute(request, Projection.FULL, idempotent, Consistency.DEFAULT, httpErrorCodes,
+        expectedErrorCodes);
   }
 
   public Result listChildren(String key) throws ClientException {
+    return await(listChildrenAsync(key));
+  }
+
+  public CompletableFuture<Result> listChildrenAsync(String key) {
     var uri = buildKeyUri(PATH_KEYS, key).build();
     var request = new HttpGet(uri);
-    return syncExecute(request, new Status[] { Status.OK });
+    return asyncExecute(request, new Status[] { Status.OK });
   }
 
-  protected ListenableFuture<Result> asyncExecute(HttpUriRequest request, Status[] expectedHttpStatusCodes,
+  /**
+   * Executes the request without blocking, the returned future is completed on an I/O thread. It fails with a
+   * {@link ClientException} (wrapped in a {@link CompletionException} for dependent stages).
+   */
+  protected CompletableFuture<Result> asyncExecute(HttpUriRequest request, Status[] expectedHttpStatusCodes,
       final Integer... expectedErrorCodes) {
-    var json = asyncExecuteJson(request, expectedHttpStatusCodes);
-    return Futures.transformAsync(json, new AsyncFunction<JsonResponse, Result>() {
-      public ListenableFuture<Result> apply(JsonResponse json) throws Exception {
-        var result = jsonToResult(json, expectedErrorCodes);
-        return Futures.immediateFuture(result);
+    return asyncExecute(request, Projection.FULL, expectedHttpStatusCodes, expectedErrorCodes);
+  }
+
+  protected CompletableFuture<Result> asyncExecute(HttpUriRequest request, Projection projection,
+      Status[] expectedHttpStatusCodes, final Integer... expectedErrorCodes) {
+    return asyncExecute(request, projection, isIdempotent(request), Consistency.DEFAULT, expectedHttpStatusCodes,
+        expectedErrorCodes);
+  }
+
+  /**
+   * Executes the request without blocking, an idempotent request is retried after transient failures and a
+   * serializable read is sent to any healthy member
+   */
+  protected CompletableFuture<Result> asyncExecute(HttpUriRequest request, Projection projection, boolean idempotent,
+      Consistency consistency, Status[] expectedHttpStatusCodes, final Integer... expectedErrorCodes) {
+    return asyncExecuteHttp(request, idempotent, consistency.isAnyMember()).thenApply(httpResponse -> {
+      try {
+        return extractResult(httpResponse, projection, expectedHttpStatusCodes, expectedErrorCodes);
+      } catch (ClientException e) {
+        throw new CompletionException(e);
       }
-    }, MoreExecutors.directExecutor());
+    });
   }
 
   protected Result syncExecute(HttpUriRequest request, Status[] expectedHttpStatusCodes, Integer... expectedErrorCodes)
       throws ClientException {
+    return await(asyncExecute(request, expectedHttpStatusCodes, expectedErrorCodes));
+  }
+
+  /**
+   * Waits for the completion of an asynchronous operation
+   */
+  protected static <T> T await(CompletableFuture<T> future) throws ClientException {
     try {
-      return asyncExecute(request, expectedHttpStatusCodes, expectedErrorCodes).get();
+      return future.get();
     } catch (InterruptedException e) {
       Thread.currentThread().interrupt();
       throw new ClientException("Interrupted during request", e);
@@ -208,36 +691,59 @@ public class EtcdClient implements AutoCloseable {
     }
   }
 
-  private ClientException unwrap(ExecutionException e) {
-    var cause = e.getCause();
+  /**
+   * @return the {@link ClientException} which caused the failure of an asynchronous operation
+   */
+  public static ClientException unwrap(Throwable t) {
+    var cause = t;
+    while ((cause instanceof ExecutionException || cause instanceof CompletionException) && cause.getCause() != null) {
+      cause = cause.getCause();
+    }
     if (cause instanceof ClientException) {
       return (ClientException) cause;
     }
-    return new ClientException("Error executing request", e);
+    return new ClientException("Error executing request", cause);
   }
 
-  private Result jsonToResult(JsonResponse response, Integer... expectedErrorCodes) throws ClientException {
-    if (response == null || response.json == null) {
-      return null;
-    }
-    var result = parseResult(response);
+  /**
+   * Decodes the result from the content of the buffered entity, the body is not copied into a String.
+   */
+  private Result extractResult(HttpResponse httpResponse, Projection projection, Status[] expectedHttpStatusCodes,
+      Integer... expectedErrorCodes) throws ClientException {
+    try {
+      var statusLine = httpResponse.getStatusLine();
+      var statusCode = Status.fromStatusCode(statusLine.getStatusCode());
+      var entity = httpResponse.getEntity();
 
-    if (result.isError() && !contains(expectedErrorCodes, result.getErrorCode())) {
-      throw new ClientException(result.getMessage(), result);
-    }
-    return result;
-  }
+      // a bad request has more information in JSON
+      if (!contains(expectedHttpStatusCodes, statusCode) && (statusCode != Status.BAD_REQUEST || entity == null)) {
+        throw new ClientException("Error response from etcd: " + statusLine.getReasonPhrase(), statusCode);
+      }
+      if (entity == null) {
+        return null;
+      }
 
-  private Result parseResult(JsonResponse response) throws ClientException {
-    Result result;
-    try {
-      result = gson.fromJson(response.json, Result.class);
-    } catch (JsonParseException e) {
-      // this is probably plain text
-      throw new ClientException("Error parsing response from etcd: " + e.getMessage() + "\n" + response.json,
-          response.httpStatusCode);
+      Result result;
+      try (var in = entity.getContent()) {
+        result = decoder.decode(in, projection);
+      } catch (MalformedJsonException e) {
+        // this is probably plain text
+        throw new ClientException("Error parsing response from etcd: " + e.getMessage(), statusCode);
+      } catch (IOException e) {
+        throw new ClientException("Error reading response: " + e.getMessage(), statusCode);
+      }
+
+      var etcdIndex = httpResponse.getFirstHeader(HEADER_ETCD_INDEX);
+      if (etcdIndex != null) {
+        result.setEtcdIndex(Long.parseLong(etcdIndex.getValue()));
+      }
+      if (result.isError() && !contains(expectedErrorCodes, result.getErrorCode())) {
+        throw new ClientException(result.getMessage(), result);
+      }
+      return result;
+    } finally {
+      close(httpResponse);
     }
-    return result;
   }
 
   private static boolean contains(Object[] list, Object find) {
@@ -249,27 +755,26 @@ public class EtcdClient implements AutoCloseable {
     return false;
   }
 
-  private JsonResponse syncExecuteJson(HttpUriRequest request, Status... expectedHttpStatusCodes)
-      throws ClientException {
-    try {
-      return asyncExecuteJson(request, expectedHttpStatusCodes).get();
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
-      throw new ClientException("Interrupted during request processing", e);
-    } catch (ExecutionException e) {
-      throw unwrap(e);
-    }
+  /**
+   * Executes the request without blocking and completes with the response body
+   */
+  protected CompletableFuture<String> asyncExecuteJson(HttpUriRequest request, Status... expectedHttpStatusCodes) {
+    return asyncExecuteJson(request, Consistency.DEFAULT, expectedHttpStatusCodes);
   }
 
-  private ListenableFuture<JsonResponse> asyncExecuteJson(HttpUriRequest request, Status[] expectedHttpStatusCodes) {
-    var response = asyncExecuteHttp(request);
-
-    return Futures.transformAsync(response, new AsyncFunction<HttpResponse, JsonResponse>() {
-      public ListenableFuture<JsonResponse> apply(HttpResponse httpResponse) throws Exception {
-        var json = extractJsonResponse(httpResponse, expectedHttpStatusCodes);
-        return Futures.immediateFuture(json);
+  /**
+   * Executes the request without blocking and completes with the response body, a serializable read is sent to any
+   * healthy member
+   */
+  protected CompletableFuture<String> asyncExecuteJson(HttpUriRequest request, Consistency consistency,
+      Status... expectedHttpStatusCodes) {
+    return asyncExecuteHttp(request, isIdempotent(request), consistency.isAnyMember()).thenApply(httpResponse -> {
+      try {
+        return extractJsonResponse(httpResponse, expectedHttpStatusCodes).json;
+      } catch (ClientException e) {
+        throw new CompletionException(e);
       }
-    }, MoreExecutors.directExecutor());
+    });
   }
 
   /**
@@ -316,28 +821,208 @@ public class EtcdClient implements AutoCloseable {
     }
   }
 
+  /**
+   * @return the path of the key, the member and its path are added when the request is sent, see
+   *         {@link #withBasePath(HttpUriRequest, Endpoint)}
+   */
   private UriBuilder buildKeyUri(String prefix, String key) {
-    return UriBuilder.fromUri(baseUri).path(prefix).path(key);
+    return UriBuilder.fromPath("/").path(prefix).path(key);
   }
 
-  private ListenableFuture<HttpResponse> asyncExecuteHttp(HttpUriRequest request) {
-    final SettableFuture<HttpResponse> future = SettableFuture.create();
+  /**
+   * Sends the request to the preferred member and fails over to the next one if the member cannot be reached. An
+   * idempotent request is repeated after a transient failure with an exponential, randomized backoff, a read is sent
+   * to a second member if it takes longer than the configured percentile of the recent reads.
+   */
+  private CompletableFuture<HttpResponse> asyncExecuteHttp(HttpUriRequest request, boolean idempotent,
+      boolean anyMember) {
+    if (request instanceof HttpRequestBase base && base.getConfig() == null) {
+      base.setConfig(isRead(request) ? readConfig : writeConfig);
+    }
+    var future = new CompletableFuture<HttpResponse>();
+    attempt(request, idempotent, anyMember, 0, future);
+    return future;
+  }
 
-    httpClient.execute(request, new FutureCallback<HttpResponse>() {
-      public void completed(HttpResponse result) {
-        future.set(result);
+  private void attempt(HttpUriRequest request, boolean idempotent, boolean anyMember, int attempt,
+      CompletableFuture<HttpResponse> future) {
+    if (future.isDone()) {
+      // cancelled by the caller
+      return;
+    }
+    var candidates = anyMember ? endpoints.spread() : endpoints.candidates();
+    var response = new CompletableFuture<HttpResponse>();
+    asyncExecuteHttp(request, candidates.iterator(), response);
+    if (hedgePercentile > 0 && isRead(request) && !isLongPoll(request)) {
+      response = hedge(request, candidates, response);
+    }
+    response.whenComplete((httpResponse, t) -> {
+      var retry = idempotent && attempt < retries && !isLongPoll(request);
+      if (t == null && retry && httpResponse.getStatusLine().getStatusCode() >= 500) {
+        LOG.debug("{} failed with {}, retry {}", request.getRequestLine(), httpResponse.getStatusLine(), attempt + 1);
+        close(httpResponse);
+        retryLater(request, idempotent, anyMember, attempt + 1, future);
+      } else if (t == null) {
+        if (!future.complete(httpResponse)) {
+          close(httpResponse);
+        }
+      } else if (retry && isTransient(t)) {
+        LOG.debug("{} failed, retry {}: {}", request.getRequestLine(), attempt + 1, t.getMessage());
+        retryLater(request, idempotent, anyMember, attempt + 1, future);
+      } else {
+        future.completeExceptionally(t);
       }
+    });
+  }
 
-      public void failed(Exception ex) {
-        future.setException(ex);
-      }
+  private void retryLater(HttpUriRequest request, boolean idempotent, boolean anyMember, int attempt,
+      CompletableFuture<HttpResponse> future) {
+    // full jitter: a random delay up to the exponential backoff spreads the retries of many clients
+    var backoff = Math.min(maxRetryBackoff, retryBackoff << Math.min(attempt - 1, 20));
+    var delay = ThreadLocalRandom.current().nextLong(backoff + 1);
+    CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS)
+        .execute(() -> attempt(request, idempotent, anyMember, attempt, future));
+  }
 
-      public void cancelled() {
-        future.setException(new InterruptedException());
+  /**
+   * Sends the read a second time, preferably to another member, if there is no response after the hedge delay. The
+   * first response wins, a late response is discarded.
+   */
+  private CompletableFuture<HttpResponse> hedge(HttpUriRequest request, List<Endpoint> candidates,
+      CompletableFuture<HttpResponse> primary) {
+    var delay = readLatency.percentile(hedgePercentile, 100);
+    if (delay < 0) {
+      return primary;
+    }
+    var result = new CompletableFuture<HttpResponse>();
+    var outstanding = new AtomicInteger(1);
+    primary.whenComplete((r, t) -> settle(result, outstanding, r, t));
+    CompletableFuture.delayedExecutor(Math.max(delay, hedgeMinDelay), TimeUnit.NANOSECONDS).execute(() -> {
+      if (result.isDone()) {
+        return;
       }
+      outstanding.incrementAndGet();
+      var others = new ArrayList<Endpoint>(candidates.size());
+      others.addAll(candidates.subList(1, candidates.size()));
+      others.add(candidates.get(0));
+      LOG.debug("{} slower than {} us, hedging on {}", request.getRequestLine(), delay / 1000, others.get(0));
+      var hedged = new CompletableFuture<HttpResponse>();
+      asyncExecuteHttp(request, others.iterator(), hedged);
+      hedged.whenComplete((r, t) -> settle(result, outstanding, r, t));
     });
+    return result;
+  }
 
-    return future;
+  private void settle(CompletableFuture<HttpResponse> result, AtomicInteger outstanding, HttpResponse response,
+      Throwable t) {
+    if (t == null) {
+      if (!result.complete(response)) {
+        close(response);
+      }
+    } else if (outstanding.decrementAndGet() == 0) {
+      result.completeExceptionally(t);
+    }
+  }
+
+  /**
+   * Reads are sent with the read timeout, may be hedged and feed the latency percentiles
+   */
+  protected boolean isRead(HttpUriRequest request) {
+    var method = request.getMethod();
+    return HttpGet.METHOD_NAME.equals(method) || HttpHead.METHOD_NAME.equals(method);
+  }
+
+  /**
+   * Only idempotent requests are retried, as a failed request might have been applied nevertheless
+   */
+  protected boolean isIdempotent(HttpUriRequest request) {
+    var method = request.getMethod();
+    return isRead(request) || HttpPut.METHOD_NAME.equals(method) || HttpDelete.METHOD_NAME.equals(method);
+  }
+
+  private static boolean isTransient(Throwable t) {
+    var cause = unwrap(t).getCause();
+    return cause instanceof IOException;
+  }
+
+  private void asyncExecuteHttp(HttpUriRequest request, Iterator<Endpoint> candidates,
+      CompletableFuture<HttpResponse> future) {
+    var endpoint = candidates.next();
+    var start = System.nanoTime();
+    try {
+      httpClient.execute(endpoint.getHost(), withBasePath(request, endpoint), new FutureCallback<HttpResponse>() {
+        public void completed(HttpResponse result) {
+          if (isLongPoll(request)) {
+            endpoint.success();
+          } else {
+            var latency = System.nanoTime() - start;
+            endpoint.success(latency);
+            if (isRead(request)) {
+              readLatency.record(latency);
+            }
+          }
+          future.complete(result);
+        }
+
+        public void failed(Exception ex) {
+          // a long-poll without events ends with a timeout, the member is healthy nevertheless
+          if (!isLongPoll(request) || !(ex instanceof SocketTimeoutException)) {
+            endpoint.failure();
+          }
+          if (candidates.hasNext() && isRetryable(request, ex)) {
+            LOG.debug("{} failed on {}, trying next member: {}", request.getRequestLine(), endpoint, ex.getMessage());
+            if (discoverMembers && endpoints.shouldRefresh()) {
+              refreshMembersAsync().exceptionally(t -> {
+                LOG.debug("member discovery failed: {}", t.getMessage());
+                return null;
+              });
+            }
+            asyncExecuteHttp(request, candidates, future);
+          } else {
+            future.completeExceptionally(new ClientException("Error executing request", ex));
+          }
+        }
+
+        public void cancelled() {
+          future.completeExceptionally(new ClientException("Request cancelled", new CancellationException()));
+        }
+      });
+    } catch (IllegalStateException e) {
+      // the shared client has already been shut down
+      future.completeExceptionally(new ClientException("Client is not running", e));
+    }
+  }
+
+  /**
+   * @return the request below the path of the endpoint, e.g. of etcd behind a proxy, the request itself if the
+   *         endpoint has no path
+   */
+  private static HttpUriRequest withBasePath(HttpUriRequest request, Endpoint endpoint) {
+    var basePath = endpoint.getUri().getRawPath();
+    if (basePath == null || basePath.isEmpty() || "/".equals(basePath)) {
+      return request;
+    }
+    var uri = request.getURI();
+    var path = (basePath.endsWith("/") ? basePath.substring(0, basePath.length() - 1) : basePath) + uri.getRawPath();
+    var query = uri.getRawQuery();
+    return RequestBuilder.copy(request).setUri(URI.create(query != null ? path + "?" + query : path)).build();
+  }
+
+  /**
+   * A request can be sent to another member if it never reached the failed one, reads can always be repeated, see
+   * {@link #isRead(HttpUriRequest)}, e.g. also the range reads of the v3 gateway, which are POSTs.
+   */
+  private boolean isRetryable(HttpUriRequest request, Exception ex) {
+    if (ex instanceof ConnectException || ex instanceof ConnectTimeoutException
+        || ex instanceof UnknownHostException) {
+      return true;
+    }
+    return isRead(request) && !isLongPoll(request) && ex instanceof IOException;
+  }
+
+  private static boolean isLongPoll(HttpUriRequest request) {
+    var query = request.getURI().getRawQuery();
+    return query != null && query.contains("wait=true");
   }
 
   private void close(HttpResponse response) {
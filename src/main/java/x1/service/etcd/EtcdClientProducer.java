@@ -0,0 +1,171 @@
+package x1.service.etcd;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedScheduledExecutorService;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Produces;
+import jakarta.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Provides one shared {@link EtcdClient} per application, so all lookups and registrations reuse the same I/O
+ * reactor and pooled keep-alive connections.
+ */
+@ApplicationScoped
+public class EtcdClientProducer {
+  private static final Logger LOG = LoggerFactory.getLogger(EtcdClientProducer.class);
+  private static final String ETCD_SERVICE = "x1.service.registry.etcd";
+
+  @Inject
+  @ConfigProperty(name = ETCD_SERVICE, defaultValue = EtcdClient.DEFAULT_ETCD_SERVICE)
+  private List<URI> etcdService;
+
+  @Inject
+  @ConfigProperty(name = ETCD_SERVICE + ".api", defaultValue = "v2")
+  private String api;
+
+  @Inject
+  @ConfigProperty(name = ETCD_SERVICE + ".discoverMembers", defaultValue = "false")
+  private boolean discoverMembers;
+
+  @Inject
+  @ConfigProperty(name = ETCD_SERVICE + ".consistency", defaultValue = "default")
+  private String consistency;
+
+  @Inject
+  @ConfigProperty(name = ETCD_SERVICE + ".watchTimeout", defaultValue = "60000")
+  private int watchTimeout;
+
+  @Inject
+  @ConfigProperty(name = ETCD_SERVICE + ".connectTimeout", defaultValue = "1000")
+  private int connectTimeout;
+
+  @Inject
+  @ConfigProperty(name = ETCD_SERVICE + ".connectionRequestTimeout", defaultValue = "1000")
+  private int connectionRequestTimeout;
+
+  @Inject
+  @ConfigProperty(name = ETCD_SERVICE + ".readTimeout", defaultValue = "1000")
+  private int readTimeout;
+
+  @Inject
+  @ConfigProperty(name = ETCD_SERVICE + ".writeTimeout", defaultValue = "1000")
+  private int writeTimeout;
+
+  @Inject
+  @ConfigProperty(name = ETCD_SERVICE + ".retries", defaultValue = "2")
+  private int retries;
+
+  @Inject
+  @ConfigProperty(name = ETCD_SERVICE + ".retryBackoff", defaultValue = "50")
+  private long retryBackoff;
+
+  @Inject
+  @ConfigProperty(name = ETCD_SERVICE + ".maxRetryBackoff", defaultValue = "1000")
+  private long maxRetryBackoff;
+
+  @Inject
+  @ConfigProperty(name = ETCD_SERVICE + ".hedgePercentile", defaultValue = "0")
+  private double hedgePercentile;
+
+  @Inject
+  @ConfigProperty(name = ETCD_SERVICE + ".hedgeMinDelay", defaultValue = "5")
+  private long hedgeMinDelay;
+
+  @Inject
+  @ConfigProperty(name = ETCD_SERVICE + ".maxConnections", defaultValue = "20")
+  private int maxConnections;
+
+  @Inject
+  @ConfigProperty(name = ETCD_SERVICE + ".maxConnectionsPerRoute", defaultValue = "10")
+  private int maxConnectionsPerRoute;
+
+  @Inject
+  @ConfigProperty(name = ETCD_SERVICE + ".keepAlive", defaultValue = "60000")
+  private long keepAlive;
+
+  @Inject
+  @ConfigProperty(name = ETCD_SERVICE + ".ioThreads", defaultValue = "2")
+  private int ioThreads;
+
+  @Resource
+  private ManagedScheduledExecutorService scheduler;
+
+  private EtcdClient client;
+
+  @PostConstruct
+  public void init() {
+    var config = new ClientConfig();
+    config.setConnectTimeout(connectTimeout);
+    config.setConnectionRequestTimeout(connectionRequestTimeout);
+    config.setReadTimeout(readTimeout);
+    config.setWriteTimeout(writeTimeout);
+    config.setWatchTimeout(watchTimeout);
+    config.setRetries(retries);
+    config.setRetryBackoff(retryBackoff);
+    config.setMaxRetryBackoff(maxRetryBackoff);
+    config.setHedgePercentile(hedgePercentile);
+    config.setHedgeMinDelay(hedgeMinDelay);
+    config.setMaxConnections(maxConnections);
+    config.setMaxConnectionsPerRoute(maxConnectionsPerRoute);
+    config.setKeepAlive(keepAlive);
+    config.setIoThreads(ioThreads);
+    config.setDiscoverMembers(discoverMembers);
+    config.setConsistency(getConsistency());
+    LOG.debug("create etcd {} client for {} with {}", api, etcdService, config);
+    if ("v3".equalsIgnoreCase(api)) {
+      client = new EtcdV3Client(etcdService, config, scheduler);
+    } else {
+      client = new EtcdClient(etcdService, config);
+    }
+    if (discoverMembers) {
+      try {
+        LOG.info("etcd members: {}", client.refreshMembers());
+      } catch (ClientException e) {
+        LOG.warn("member discovery failed: {}", e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * @return the configured consistency, the default one with a warning if the name is unknown
+   */
+  private Consistency getConsistency() {
+    for (var value : Consistency.values()) {
+      if (value.name().equalsIgnoreCase(consistency.strip())) {
+        return value;
+      }
+    }
+    LOG.warn("unknown {}.consistency '{}', expected one of {}, using {}", ETCD_SERVICE, consistency,
+        Arrays.toString(Consistency.values()).toLowerCase(), Consistency.DEFAULT.name().toLowerCase());
+    return Consistency.DEFAULT;
+  }
+
+  @Produces
+  public EtcdClient getEtcdClient() {
+    return client;
+  }
+
+  /**
+   * Closes the client with the application context, the registrator has removed its entries before, see
+   * {@link x1.service.registry.ServiceRegistrator#beforeShutdown(Object)}
+   */
+  @PreDestroy
+  public void destroy() {
+    try {
+      client.close();
+    } catch (IOException e) {
+      LOG.warn(e.getMessage());
+    }
+  }
+}
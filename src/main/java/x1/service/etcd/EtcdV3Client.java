@@ -0,0 +1,590 @@
+package x1.service.etcd;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.ws.rs.core.Response.Status;
+
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * An etcd client which speaks the v3 API through the JSON gateway, but keeps the v2 model of {@link Result} and
+ * {@link Node}: a directory is a key prefix, keys with a ttl share one lease per client, which is kept alive in the
+ * background, and a lookup of a directory is a single prefix range read. Range reads are linearizable unless
+ * {@link Consistency#SERIALIZABLE} is requested.
+ */
+public class EtcdV3Client extends EtcdClient {
+  private static final Logger LOG = LoggerFactory.getLogger(EtcdV3Client.class);
+  private static final String PATH_RANGE = "/v3/kv/range";
+  private static final String PATH_PUT = "/v3/kv/put";
+  private static final String PATH_DELETE_RANGE = "/v3/kv/deleterange";
+  private static final String PATH_TXN = "/v3/kv/txn";
+  private static final String PATH_LEASE_GRANT = "/v3/lease/grant";
+  private static final String PATH_LEASE_KEEPALIVE = "/v3/lease/keepalive";
+  private static final String PATH_LEASE_REVOKE = "/v3/lease/revoke";
+  private static final String PATH_MEMBER_LIST = "/v3/cluster/member/list";
+  private static final Integer ECODE_KEY_NOT_FOUND = 100;
+  private static final Integer ECODE_TEST_FAILED = 101;
+
+  private final ScheduledExecutorService scheduler;
+  private final boolean ownScheduler;
+  private CompletableFuture<Long> lease;
+  private ScheduledFuture<?> keepAlive;
+
+  public EtcdV3Client(URI baseUri) {
+    this(List.of(baseUri), new ClientConfig());
+  }
+
+  /**
+   * Creates a client which keeps its lease alive on a scheduler of its own, shut down when the client is closed
+   */
+  public EtcdV3Client(List<URI> members, ClientConfig config) {
+    this(members, config, null);
+  }
+
+  /**
+   * @param scheduler keeps the lease alive, e.g. the managed executor of the container, which the client does not
+   *          shut down; if null the client creates one of its own
+   */
+  public EtcdV3Client(List<URI> members, ClientConfig config, ScheduledExecutorService scheduler) {
+    super(members, config);
+    this.ownScheduler = scheduler == null;
+    this.scheduler = scheduler != null ? scheduler
+        : Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("etcd-lease").factory());
+  }
+
+  /**
+   * Reads the key and all keys below it with one prefix range read
+   */
+  @Override
+  CompletableFuture<Result> fetchAsync(String key, Projection projection, boolean recursive,
+      Consistency consistency) {
+    var body = new JsonObject();
+    body.addProperty("key", encode(key));
+    body.addProperty("range_end", encode(prefixEnd(key + "/")));
+    if (!projection.includeValues()) {
+      body.addProperty("keys_only", true);
+    }
+    if (consistency == Consistency.SERIALIZABLE) {
+      body.addProperty("serializable", true);
+    }
+    return post(PATH_RANGE, body, consistency).thenApply(response -> {
+      var result = new Result();
+      result.setAction("get");
+      result.setEtcdIndex(revision(response));
+      var node = toTree(key, response.getAsJsonArray("kvs"), recursive);
+      if (node == null) {
+        return keyNotFound(result, key);
+      }
+      result.setNode(node);
+      return result;
+    });
+  }
+
+  @Override
+  public CompletableFuture<Result> listChildrenAsync(String key) {
+    return fetchAsync(key, Projection.FULL, false).thenApply(result -> {
+      if (result.isError()) {
+        throw new CompletionException(new ClientException(result.getMessage(), result));
+      }
+      return result;
+    });
+  }
+
+  /**
+   * Sets a key, with a ttl the key is attached to the lease of this client
+   */
+  @Override
+  public CompletableFuture<Result> setAsync(String key, String value, Integer ttl) {
+    var leaseId = ttl != null ? leaseAsync(ttl) : CompletableFuture.completedFuture(0L);
+    return leaseId.thenCompose(id -> {
+      var body = new JsonObject();
+      body.addProperty("key", encode(key));
+      body.addProperty("value", encode(value));
+      if (id != 0) {
+        body.addProperty("lease", Long.toString(id));
+      }
+      body.addProperty("prev_kv", true);
+      return post(PATH_PUT, body);
+    }).thenApply(response -> {
+      var result = new Result();
+      var revision = revision(response);
+      result.setEtcdIndex(revision);
+      var node = new Node();
+      node.setKey(key);
+      node.setValue(value);
+      node.setTtl(ttl);
+      node.setModifiedIndex(revision);
+      result.setNode(node);
+      var prevKv = response.getAsJsonObject("prev_kv");
+      if (prevKv != null) {
+        result.setAction("update");
+        result.setPrevNode(toNode(prevKv));
+        node.setCreatedIndex(result.getPrevNode().getCreatedIndex());
+      } else {
+        result.setAction("create");
+        node.setCreatedIndex(revision);
+      }
+      return result;
+    });
+  }
+
+  /**
+   * All keys with a ttl share the lease of this client, which the keep alive in the background refreshes once for all
+   * keys. A refresh only checks that the key still exists and is attached to that lease. Otherwise the key is
+   * reported as not found, and the next set attaches it to the current lease.
+   */
+  @Override
+  public CompletableFuture<Result> refreshAsync(String key, int ttl) {
+    var leaseId = currentLease();
+    var result = new Result();
+    result.setAction("update");
+    if (leaseId == 0) {
+      return CompletableFuture.completedFuture(keyNotFound(result, key));
+    }
+    var body = new JsonObject();
+    body.addProperty("key", encode(key));
+    body.addProperty("keys_only", true);
+    return post(PATH_RANGE, body).thenApply(response -> {
+      result.setEtcdIndex(revision(response));
+      return refreshed(result, key, ttl, leaseId, response.getAsJsonArray("kvs"));
+    });
+  }
+
+  private static Result refreshed(Result result, String key, int ttl, long leaseId, JsonArray kvs) {
+    if (kvs == null || kvs.isEmpty()) {
+      return keyNotFound(result, key);
+    }
+    var kv = kvs.get(0).getAsJsonObject();
+    if (!kv.has("lease") || kv.get("lease").getAsLong() != leaseId) {
+      LOG.debug("{} is not attached to lease {}", key, leaseId);
+      return keyNotFound(result, key);
+    }
+    var node = toNode(kv);
+    node.setTtl(ttl);
+    result.setNode(node);
+    return result;
+  }
+
+  /**
+   * @return the id of the lease of this client, 0 if none has been granted yet or it has expired
+   */
+  private synchronized long currentLease() {
+    if (lease == null || !lease.isDone() || lease.isCompletedExceptionally()) {
+      return 0;
+    }
+    return lease.join();
+  }
+
+  /**
+   * Checks in one transaction that the key has not been modified since prevIndex, i.e. its mod_revision, and reads it
+   * to check that it is attached to the lease of this client. Completes with the error result 101 (compare failed) if
+   * it has been modified, or 100 (key not found) if it does not exist or is not attached to the lease.
+   */
+  @Override
+  public CompletableFuture<Result> refreshAsync(String key, int ttl, long prevIndex) {
+    var leaseId = currentLease();
+    var result = new Result();
+    result.setAction("update");
+    if (leaseId == 0) {
+      return CompletableFuture.completedFuture(keyNotFound(result, key));
+    }
+    var compare = new JsonObject();
+    compare.addProperty("key", encode(key));
+    compare.addProperty("target", "MOD");
+    compare.addProperty("result", "EQUAL");
+    compare.addProperty("mod_revision", Long.toString(prevIndex));
+    var range = new JsonObject();
+    range.addProperty("key", encode(key));
+    range.addProperty("keys_only", true);
+    var read = new JsonObject();
+    read.add("request_range", range);
+    var body = new JsonObject();
+    body.add("compare", array(compare));
+    body.add("success", array(read));
+    body.add("failure", array(read));
+    return post(PATH_TXN, body).thenApply(response -> {
+      var revision = revision(response);
+      result.setEtcdIndex(revision);
+      var responses = response.getAsJsonArray("responses");
+      var kvs = responses != null && !responses.isEmpty()
+          ? responses.get(0).getAsJsonObject().getAsJsonObject("response_range").getAsJsonArray("kvs")
+          : null;
+      if (kvs != null && !kvs.isEmpty() && !(response.has("succeeded") && response.get("succeeded").getAsBoolean())) {
+        result.setErrorCode(ECODE_TEST_FAILED);
+        result.setMessage("Compare failed");
+        result.setCause("[" + prevIndex + "]");
+        result.setErrorIndex((int) revision);
+        return result;
+      }
+      return refreshed(result, key, ttl, leaseId, kvs);
+    });
+  }
+
+  /**
+   * Directories are implicit in v3, there is nothing to create
+   */
+  @Override
+  public CompletableFuture<Result> createDirectoryAsync(String key) {
+    var result = new Result();
+    result.setAction("create");
+    var node = new Node();
+    node.setKey(key);
+    node.setDir(true);
+    result.setNode(node);
+    return CompletableFuture.completedFuture(result);
+  }
+
+  @Override
+  public CompletableFuture<Result> deleteAsync(String key) {
+    return deleteRange(key, null);
+  }
+
+  @Override
+  public CompletableFuture<Result> deleteDirectoryAsync(String key) {
+    return deleteRange(key, prefixEnd(key + "/"));
+  }
+
+  private CompletableFuture<Result> deleteRange(String key, String rangeEnd) {
+    var body = new JsonObject();
+    body.addProperty("key", encode(rangeEnd != null ? key + "/" : key));
+    if (rangeEnd != null) {
+      body.addProperty("range_end", encode(rangeEnd));
+    }
+    body.addProperty("prev_kv", true);
+    return post(PATH_DELETE_RANGE, body).thenApply(response -> {
+      var result = new Result();
+      result.setAction("delete");
+      var revision = revision(response);
+      result.setEtcdIndex(revision);
+      var prevKvs = response.getAsJsonArray("prev_kvs");
+      if (prevKvs == null || prevKvs.isEmpty()) {
+        return keyNotFound(result, key);
+      }
+      var node = new Node();
+      node.setKey(key);
+      node.setModifiedIndex(revision);
+      node.setDir(rangeEnd != null);
+      result.setNode(node);
+      result.setPrevNode(toNode(prevKvs.get(0).getAsJsonObject()));
+      return result;
+    });
+  }
+
+  private static Result keyNotFound(Result result, String key) {
+    result.setErrorCode(ECODE_KEY_NOT_FOUND);
+    result.setMessage("Key not found");
+    result.setCause(key);
+    result.setErrorIndex((int) result.getEtcdIndex());
+    return result;
+  }
+
+  /**
+   * Sets a key to a new value in a transaction, if the value is a specified value
+   */
+  @Override
+  public CompletableFuture<Result> casAsync(String key, String prevValue, String value) {
+    var compare = new JsonObject();
+    compare.addProperty("key", encode(key));
+    compare.addProperty("target", "VALUE");
+    compare.addProperty("result", "EQUAL");
+    compare.addProperty("value", encode(prevValue));
+    var put = new JsonObject();
+    put.addProperty("key", encode(key));
+    put.addProperty("value", encode(value));
+    var success = new JsonObject();
+    success.add("request_put", put);
+    var body = new JsonObject();
+    body.add("compare", array(compare));
+    body.add("success", array(success));
+    return post(PATH_TXN, body).thenApply(response -> {
+      var result = new Result();
+      var revision = revision(response);
+      result.setEtcdIndex(revision);
+      if (response.has("succeeded") && response.get("succeeded").getAsBoolean()) {
+        result.setAction("compareAndSwap");
+        var node = new Node();
+        node.setKey(key);
+        node.setValue(value);
+        node.setModifiedIndex(revision);
+        result.setNode(node);
+      } else {
+        result.setErrorCode(ECODE_TEST_FAILED);
+        result.setMessage("Compare failed");
+        result.setCause("[" + prevValue + "]");
+        result.setErrorIndex((int) revision);
+      }
+      return result;
+    });
+  }
+
+  @Override
+  public boolean isWatchSupported() {
+    return false;
+  }
+
+  /**
+   * The v3 gateway streams watch events, which does not fit the long-poll model of {@link WatchSubscription}
+   */
+  @Override
+  public CompletableFuture<Result> watchAsync(String key, Long index, boolean recursive) {
+    return CompletableFuture.failedFuture(
+        new ClientException("watch is not supported by the v3 backend", new UnsupportedOperationException()));
+  }
+
+  @Override
+  protected HttpUriRequest buildMembersRequest() {
+    return buildPost(PATH_MEMBER_LIST, new JsonObject());
+  }
+
+  /**
+   * @return the id of the lease shared by all keys with a ttl, granted on first use
+   */
+  public synchronized CompletableFuture<Long> leaseAsync(int ttl) {
+    if (lease == null || lease.isCompletedExceptionally()) {
+      var body = new JsonObject();
+      body.addProperty("TTL", ttl);
+      lease = post(PATH_LEASE_GRANT, body).thenApply(response -> {
+        var id = response.get("ID").getAsLong();
+        LOG.debug("granted lease {} with ttl {}", id, ttl);
+        scheduleKeepAlive(id, ttl);
+        return id;
+      });
+    }
+    return lease;
+  }
+
+  /**
+   * Refreshes the ttl of all keys attached to the lease of this client. Completes with false if the lease has
+   * expired, a new lease is then granted with the next key which is set.
+   */
+  public CompletableFuture<Boolean> keepAliveAsync() {
+    CompletableFuture<Long> current;
+    synchronized (this) {
+      current = lease;
+    }
+    if (current == null) {
+      return CompletableFuture.completedFuture(false);
+    }
+    return current.thenCompose(id -> {
+      var body = new JsonObject();
+      body.addProperty("ID", Long.toString(id));
+      return post(PATH_LEASE_KEEPALIVE, body).thenApply(response -> {
+        var result = response.getAsJsonObject("result");
+        var alive = result != null && result.has("TTL") && result.get("TTL").getAsLong() > 0;
+        if (!alive) {
+          LOG.info("lease {} has expired", id);
+          expire(current);
+        }
+        return alive;
+      });
+    });
+  }
+
+  private synchronized void scheduleKeepAlive(long id, int ttl) {
+    if (keepAlive != null) {
+      keepAlive.cancel(false);
+    }
+    var period = Math.max(1, ttl / 3);
+    try {
+      // the keep alive only sends the request, no scheduler thread waits for etcd
+      keepAlive = scheduler.scheduleAtFixedRate(() -> keepAliveAsync().whenComplete((alive, e) -> {
+        if (e != null) {
+          LOG.warn("keep alive of lease {} failed: {}", id, unwrap(e).getMessage());
+        }
+      }), period, period, TimeUnit.SECONDS);
+    } catch (RejectedExecutionException e) {
+      LOG.debug("keep alive of lease {} stopped", id);
+    }
+  }
+
+  private synchronized void expire(CompletableFuture<Long> expired) {
+    if (lease == expired) {
+      lease = null;
+      if (keepAlive != null) {
+        keepAlive.cancel(false);
+        keepAlive = null;
+      }
+    }
+  }
+
+  /**
+   * Revokes the lease, which removes all keys attached to it, and closes the client
+   */
+  @Override
+  public void close() throws IOException {
+    if (ownScheduler) {
+      scheduler.shutdownNow();
+    }
+    CompletableFuture<Long> current;
+    synchronized (this) {
+      current = lease;
+      lease = null;
+      if (keepAlive != null) {
+        keepAlive.cancel(false);
+        keepAlive = null;
+      }
+    }
+    if (current != null && current.isDone() && !current.isCompletedExceptionally()) {
+      var body = new JsonObject();
+      body.addProperty("ID", Long.toString(current.join()));
+      try {
+        await(post(PATH_LEASE_REVOKE, body));
+      } catch (ClientException e) {
+        LOG.warn("revoke of lease failed: {}", e.getMessage());
+      }
+    }
+    super.close();
+  }
+
+  /**
+   * All requests of the gateway are POSTs, a range read is a read
+   */
+  @Override
+  protected boolean isRead(HttpUriRequest request) {
+    var path = request.getURI().getPath();
+    return PATH_RANGE.equals(path) || PATH_MEMBER_LIST.equals(path);
+  }
+
+  /**
+   * A put of a value or a delete can be repeated, a transaction or a lease grant cannot
+   */
+  @Override
+  protected boolean isIdempotent(HttpUriRequest request) {
+    var path = request.getURI().getPath();
+    return isRead(request) || PATH_PUT.equals(path) || PATH_DELETE_RANGE.equals(path)
+        || PATH_LEASE_KEEPALIVE.equals(path) || PATH_LEASE_REVOKE.equals(path);
+  }
+
+  private CompletableFuture<JsonObject> post(String path, JsonObject body) {
+    return post(path, body, Consistency.DEFAULT);
+  }
+
+  private CompletableFuture<JsonObject> post(String path, JsonObject body, Consistency consistency) {
+    return asyncExecuteJson(buildPost(path, body), consistency, Status.OK).thenApply(json -> {
+      var response = JsonParser.parseString(json).getAsJsonObject();
+      if (response.has("error")) {
+        throw new CompletionException(new ClientException(response.get("error").getAsString(), Status.BAD_REQUEST));
+      }
+      return response;
+    });
+  }
+
+  private static HttpPost buildPost(String path, JsonObject body) {
+    var request = new HttpPost(URI.create(path));
+    request.setEntity(new StringEntity(body.toString(), ContentType.APPLICATION_JSON));
+    return request;
+  }
+
+  /**
+   * Builds the v2 tree for the key from the flat list of keys below it
+   */
+  private static Node toTree(String key, JsonArray kvs, boolean recursive) {
+    if (kvs == null || kvs.isEmpty()) {
+      return null;
+    }
+    var root = new Node();
+    root.setKey(key);
+    var dirs = new LinkedHashMap<String, Node>();
+    dirs.put(key, root);
+    for (var element : kvs) {
+      var node = toNode(element.getAsJsonObject());
+      if (node.getKey().equals(key)) {
+        // the key itself is not a directory
+        return node;
+      } else if (!node.getKey().startsWith(key + "/")) {
+        // e.g. key-1 is within the range of key/
+        continue;
+      }
+      var path = node.getKey().substring(key.length() + 1).split("/");
+      var parent = root;
+      var parentKey = key;
+      for (var i = 0; i < path.length - 1 && (recursive || i == 0); i++) {
+        parentKey = parentKey + "/" + path[i];
+        parent = child(dirs, parent, parentKey);
+      }
+      if (recursive || path.length == 1) {
+        parent.getNodes().add(node);
+      }
+      root.setModifiedIndex(Math.max(root.getModifiedIndex(), node.getModifiedIndex()));
+    }
+    if (root.getNodes().isEmpty()) {
+      return null;
+    }
+    root.setDir(true);
+    return root;
+  }
+
+  private static Node child(LinkedHashMap<String, Node> dirs, Node parent, String key) {
+    return dirs.computeIfAbsent(key, k -> {
+      var dir = new Node();
+      dir.setKey(k);
+      dir.setDir(true);
+      parent.getNodes().add(dir);
+      return dir;
+    });
+  }
+
+  private static Node toNode(JsonObject kv) {
+    var node = new Node();
+    node.setKey(decode(kv.get("key").getAsString()));
+    if (kv.has("value")) {
+      node.setValue(decode(kv.get("value").getAsString()));
+    }
+    if (kv.has("create_revision")) {
+      node.setCreatedIndex(kv.get("create_revision").getAsLong());
+    }
+    if (kv.has("mod_revision")) {
+      node.setModifiedIndex(kv.get("mod_revision").getAsLong());
+    }
+    return node;
+  }
+
+  private static long revision(JsonObject response) {
+    var header = response.getAsJsonObject("header");
+    return header != null && header.has("revision") ? header.get("revision").getAsLong() : 0;
+  }
+
+  private static JsonArray array(JsonObject element) {
+    var array = new JsonArray();
+    array.add(element);
+    return array;
+  }
+
+  private static String encode(String s) {
+    return Base64.getEncoder().encodeToString(s.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String decode(String s) {
+    return new String(Base64.getDecoder().decode(s), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @return the end of the range of all keys with the prefix
+   */
+  static String prefixEnd(String prefix) {
+    var bytes = prefix.getBytes(StandardCharsets.UTF_8);
+    bytes[bytes.length - 1]++;
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,72 @@
+package x1.service.etcd;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latencies with log-linear buckets (8 per power of two, i.e. at most 12.5% error). Once
+ * the window is full all counts are halved, so the percentiles follow the recent latencies.
+ */
+class LatencyHistogram {
+  private static final int LINEAR = 16;
+  private static final int SUB_BUCKETS = 8;
+  private static final int BUCKETS = LINEAR + (Long.SIZE - 4) * SUB_BUCKETS;
+  private static final long WINDOW = 4096;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final AtomicLong recorded = new AtomicLong();
+
+  void record(long nanos) {
+    counts.incrementAndGet(bucket(TimeUnit.NANOSECONDS.toMicros(Math.max(0, nanos))));
+    if (recorded.incrementAndGet() % WINDOW == 0) {
+      for (var i = 0; i < BUCKETS; i++) {
+        var count = counts.get(i);
+        counts.addAndGet(i, -(count / 2));
+      }
+    }
+  }
+
+  /**
+   * @return the upper bound (ns) of the bucket of the given percentile (0-100), -1 if less than minSamples latencies
+   *         have been recorded
+   */
+  long percentile(double percentile, long minSamples) {
+    var snapshot = new long[BUCKETS];
+    var total = 0L;
+    for (var i = 0; i < BUCKETS; i++) {
+      snapshot[i] = counts.get(i);
+      total += snapshot[i];
+    }
+    if (total == 0 || total < minSamples) {
+      return -1;
+    }
+    var rank = (long) Math.ceil(total * Math.min(100, percentile) / 100);
+    var sum = 0L;
+    for (var i = 0; i < BUCKETS; i++) {
+      sum += snapshot[i];
+      if (sum >= rank) {
+        return TimeUnit.MICROSECONDS.toNanos(upperBound(i));
+      }
+    }
+    return TimeUnit.MICROSECONDS.toNanos(upperBound(BUCKETS - 1));
+  }
+
+  private static int bucket(long micros) {
+    if (micros < LINEAR) {
+      return (int) micros;
+    }
+    var msb = 63 - Long.numberOfLeadingZeros(micros);
+    var sub = (int) (micros >>> (msb - 3)) & (SUB_BUCKETS - 1);
+    return LINEAR + (msb - 4) * SUB_BUCKETS + sub;
+  }
+
+  private static long upperBound(int bucket) {
+    if (bucket < LINEAR) {
+      return bucket + 1;
+    }
+    var msb = (bucket - LINEAR) / SUB_BUCKETS + 4;
+    var sub = (bucket - LINEAR) % SUB_BUCKETS;
+    return (long) (SUB_BUCKETS + sub + 1) << (msb - 3);
+  }
+}
@@ -0,0 +1,72 @@
+package x1.service.etcd;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * A single operation of a batch, see {@link EtcdClient#batch(java.util.List, int)}
+ */
+public class Operation {
+  private final String name;
+  private final String key;
+  private final Function<EtcdClient, CompletableFuture<Result>> action;
+
+  private Operation(String name, String key, Function<EtcdClient, CompletableFuture<Result>> action) {
+    this.name = name;
+    this.key = key;
+    this.action = action;
+  }
+
+  public static Operation get(String key) {
+    return new Operation("get", key, etcd -> etcd.getAsync(key));
+  }
+
+  public static Operation set(String key, String value, Integer ttl) {
+    return new Operation("set", key, etcd -> etcd.setAsync(key, value, ttl));
+  }
+
+  public static Operation refresh(String key, int ttl) {
+    return new Operation("refresh", key, etcd -> etcd.refreshAsync(key, ttl));
+  }
+
+  public static Operation refresh(String key, int ttl, long prevIndex) {
+    return new Operation("refresh", key, etcd -> etcd.refreshAsync(key, ttl, prevIndex));
+  }
+
+  public static Operation delete(String key) {
+    return new Operation("delete", key, etcd -> etcd.deleteAsync(key));
+  }
+
+  public static Operation createDirectory(String key) {
+    return new Operation("createDirectory", key, etcd -> etcd.createDirectoryAsync(key));
+  }
+
+  public static Operation cas(String key, String prevValue, String value) {
+    return new Operation("cas", key, etcd -> etcd.casAsync(key, prevValue, value));
+  }
+
+  /**
+   * @return an operation which runs the next operation after this one has completed successfully, the result is the
+   *         one of the next operation
+   */
+  public Operation then(Operation next) {
+    return new Operation(name + "+" + next.name, key, etcd -> action.apply(etcd).thenCompose(r -> next.execute(etcd)));
+  }
+
+  CompletableFuture<Result> execute(EtcdClient etcd) {
+    return action.apply(etcd);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getKey() {
+    return key;
+  }
+
+  @Override
+  public String toString() {
+    return name + "(" + key + ")";
+  }
+}
@@ -0,0 +1,15 @@
+package x1.service.etcd;
+
+/**
+ * Selects which fields of a {@link Node} are decoded from an etcd response.
+ */
+public enum Projection {
+  /** decode all fields */
+  FULL,
+  /** skip node values and the previous node, e.g. when only the keys of a listing are needed */
+  KEYS_ONLY;
+
+  public boolean includeValues() {
+    return this == FULL;
+  }
+}
@@ -12,6 +12,9 @@ public class Result {
   private String cause;
   private int errorIndex;
 
+  // From the X-Etcd-Index header
+  private transient long etcdIndex;
+
   public boolean isError() {
     return errorCode != null;
   }
@@ -107,7 +110,8 @@ public class Result {
   }
 
   /**
-   * @return the errorIndex
+   * @return the errorIndex, decoded from the field "index" of an error response (or "errorIndex"), as etcd names it
+   *         "index"; the reflective decoding before only knew "errorIndex" and left it 0
    */
   public int getErrorIndex() {
     return errorIndex;
@@ -121,6 +125,21 @@ public class Result {
     this.errorIndex = errorIndex;
   }
 
+  /**
+   * @return the etcdIndex of the cluster when the response was sent
+   */
+  public long getEtcdIndex() {
+    return etcdIndex;
+  }
+
+  /**
+   * @param etcdIndex
+   *          the etcdIndex to set
+   */
+  public void setEtcdIndex(long etcdIndex) {
+    this.etcdIndex = etcdIndex;
+  }
+
   /* (non-Javadoc)
    * @see java.lang.Object#toString()
    */
@@ -141,6 +160,8 @@ public class Result {
     builder.append(cause);
     builder.append(", errorIndex=");
     builder.append(errorIndex);
+    builder.append(", etcdIndex=");
+    builder.append(etcdIndex);
     builder.append("]");
     return builder.toString();
   }
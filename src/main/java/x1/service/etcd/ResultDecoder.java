@@ -0,0 +1,145 @@
+package x1.service.etcd;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+/**
+ * Decodes an etcd v2 response from the content stream of the entity into {@link Result} and {@link Node}, without
+ * copying the body into a String and without reflection. The async client still buffers the whole entity in memory
+ * before the response is handed over, so the decoder saves the String copy and the skipped fields, not the buffer.
+ */
+public class ResultDecoder {
+
+  /**
+   * Decodes a result, fields not selected by the projection are skipped in the stream.
+   */
+  public Result decode(InputStream in, Projection projection) throws IOException {
+    try (var reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+      return readResult(reader, projection);
+    } catch (IllegalStateException | NumberFormatException e) {
+      throw new MalformedJsonException(e.getMessage(), e);
+    }
+  }
+
+  private Result readResult(JsonReader reader, Projection projection) throws IOException {
+    var result = new Result();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+      case "action":
+        result.setAction(nextString(reader));
+        break;
+      case "node":
+        result.setNode(readNode(reader, projection));
+        break;
+      case "prevNode":
+        if (projection.includeValues()) {
+          result.setPrevNode(readNode(reader, projection));
+        } else {
+          reader.skipValue();
+        }
+        break;
+      case "errorCode":
+        result.setErrorCode(nextInteger(reader));
+        break;
+      case "message":
+        result.setMessage(nextString(reader));
+        break;
+      case "cause":
+        result.setCause(nextString(reader));
+        break;
+      // etcd names it index in error responses
+      case "index":
+      case "errorIndex":
+        result.setErrorIndex(reader.nextInt());
+        break;
+      default:
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return result;
+  }
+
+  private Node readNode(JsonReader reader, Projection projection) throws IOException {
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return null;
+    }
+    var node = new Node();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+      case "key":
+        node.setKey(nextString(reader));
+        break;
+      case "createdIndex":
+        node.setCreatedIndex(reader.nextLong());
+        break;
+      case "modifiedIndex":
+        node.setModifiedIndex(reader.nextLong());
+        break;
+      case "value":
+        if (projection.includeValues()) {
+          node.setValue(nextString(reader));
+        } else {
+          reader.skipValue();
+        }
+        break;
+      case "expiration":
+        node.setExpiration(nextString(reader));
+        break;
+      case "ttl":
+        node.setTtl(nextInteger(reader));
+        break;
+      case "dir":
+        node.setDir(reader.nextBoolean());
+        break;
+      case "nodes":
+        readNodes(reader, node, projection);
+        break;
+      default:
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return node;
+  }
+
+  private void readNodes(JsonReader reader, Node parent, Projection projection) throws IOException {
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return;
+    }
+    var nodes = new ArrayList<Node>();
+    reader.beginArray();
+    while (reader.hasNext()) {
+      nodes.add(readNode(reader, projection));
+    }
+    reader.endArray();
+    parent.setNodes(nodes);
+  }
+
+  private static String nextString(JsonReader reader) throws IOException {
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return null;
+    }
+    return reader.nextString();
+  }
+
+  private static Integer nextInteger(JsonReader reader) throws IOException {
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return null;
+    }
+    return reader.nextInt();
+  }
+}
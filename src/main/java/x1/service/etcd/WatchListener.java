@@ -0,0 +1,20 @@
+package x1.service.etcd;
+
+/**
+ * Receives the changes of a {@link WatchSubscription}. The next change is requested only after the listener returned,
+ * so a slow listener slows down the subscription instead of losing events.
+ */
+public interface WatchListener {
+
+  /**
+   * Called for each change in the watched subtree
+   */
+  void onEvent(Result event) throws InterruptedException;
+
+  /**
+   * Called with the current state of the watched subtree when the subscription starts without an index or when etcd
+   * has cleared the events since the last index. The snapshot is null if the key does not exist.
+   */
+  default void onResync(Result snapshot) throws InterruptedException {
+  }
+}
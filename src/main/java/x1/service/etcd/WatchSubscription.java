@@ -0,0 +1,160 @@
+package x1.service.etcd;
+
+import java.net.SocketTimeoutException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A continuous watch on a key or subtree. Each long-poll is re-armed with the modifiedIndex of the last event + 1, if
+ * etcd has already cleared that index (errorCode 401) the subtree is listed again and the watch resumes from the
+ * X-Etcd-Index of the listing.
+ */
+public class WatchSubscription implements AutoCloseable {
+  private static final Logger LOG = LoggerFactory.getLogger(WatchSubscription.class);
+  private static final Integer ECODE_EVENT_INDEX_CLEARED = 401;
+  private static final long MIN_BACKOFF = 500;
+  private static final long MAX_BACKOFF = TimeUnit.SECONDS.toMillis(30);
+
+  private final EtcdClient etcd;
+  private final String key;
+  private final boolean recursive;
+  private final WatchListener listener;
+  private volatile long index;
+  private volatile boolean closed;
+  private volatile CompletableFuture<Result> pending;
+  private Thread thread;
+
+  public WatchSubscription(EtcdClient etcd, String key, boolean recursive, WatchListener listener) {
+    this.etcd = etcd;
+    this.key = key;
+    this.recursive = recursive;
+    this.listener = listener;
+  }
+
+  /**
+   * Creates a subscription which puts the events (and non-empty snapshots) into a bounded queue, blocking while the
+   * queue is full.
+   */
+  public static WatchSubscription toQueue(EtcdClient etcd, String key, boolean recursive,
+      BlockingQueue<Result> queue) {
+    return new WatchSubscription(etcd, key, recursive, new WatchListener() {
+      public void onEvent(Result event) throws InterruptedException {
+        queue.put(event);
+      }
+
+      public void onResync(Result snapshot) throws InterruptedException {
+        if (snapshot != null) {
+          queue.put(snapshot);
+        }
+      }
+    });
+  }
+
+  /**
+   * Starts with the current state, which is passed to {@link WatchListener#onResync(Result)}
+   */
+  public WatchSubscription start() {
+    return start(null);
+  }
+
+  /**
+   * Starts with the events after the given index, or with the current state if the index is null
+   */
+  public synchronized WatchSubscription start(Long fromIndex) {
+    if (thread != null) {
+      throw new IllegalStateException("already started");
+    }
+    thread = Thread.ofVirtual().name("etcd-watch-" + key).start(() -> run(fromIndex));
+    return this;
+  }
+
+  /**
+   * @return the index of the next event to be delivered
+   */
+  public long getIndex() {
+    return index;
+  }
+
+  public boolean isClosed() {
+    return closed;
+  }
+
+  @Override
+  public synchronized void close() {
+    closed = true;
+    var current = pending;
+    if (current != null) {
+      current.cancel(true);
+    }
+    if (thread != null) {
+      thread.interrupt();
+    }
+  }
+
+  private void run(Long fromIndex) {
+    var backoff = MIN_BACKOFF;
+    try {
+      if (fromIndex == null) {
+        resync();
+      } else {
+        index = fromIndex;
+      }
+      while (!closed) {
+        try {
+          var event = next();
+          index = event.getNode().getModifiedIndex() + 1;
+          listener.onEvent(event);
+          backoff = MIN_BACKOFF;
+        } catch (ClientException e) {
+          if (e.isEtcdError(ECODE_EVENT_INDEX_CLEARED)) {
+            LOG.debug("events of {} cleared at index {}, listing again", key, index);
+            resync();
+          } else if (!(e.getCause() instanceof SocketTimeoutException)) {
+            // a timeout just ends the long-poll
+            LOG.warn("watch {} failed, retry in {} ms: {}", key, backoff, e.getMessage());
+            Thread.sleep(backoff);
+            backoff = Math.min(MAX_BACKOFF, backoff * 2);
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (RuntimeException e) {
+      LOG.error("watch " + key + " stopped", e);
+    }
+    LOG.debug("watch {} closed at index {}", key, index);
+  }
+
+  private Result next() throws ClientException, InterruptedException {
+    pending = etcd.watchAsync(key, index, recursive);
+    try {
+      return pending.get();
+    } catch (ExecutionException e) {
+      throw EtcdClient.unwrap(e);
+    } catch (CancellationException e) {
+      throw new InterruptedException("watch cancelled");
+    }
+  }
+
+  private void resync() throws InterruptedException {
+    var backoff = MIN_BACKOFF;
+    while (!closed) {
+      try {
+        var snapshot = etcd.fetchAsync(key, Projection.FULL, recursive).get();
+        index = Math.max(snapshot.getEtcdIndex(), snapshot.getErrorIndex()) + 1;
+        listener.onResync(snapshot.isError() ? null : snapshot);
+        return;
+      } catch (ExecutionException e) {
+        LOG.warn("listing {} failed, retry in {} ms: {}", key, backoff, EtcdClient.unwrap(e).getMessage());
+        Thread.sleep(backoff);
+        backoff = Math.min(MAX_BACKOFF, backoff * 2);
+      }
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package x1.service.registry;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The delays between the registration cycles. Each instance starts at a random phase of the interval and every delay
+ * is jittered, so the nodes of a fleet do not hit etcd in the same second. Cycles slower than a quarter of the timeout
+ * double the delay, as long as it leaves one interval before the ttl of the entries expires, faster cycles halve it
+ * again. A failed cycle does not back off, it is retried after a tenth of the delay.
+ */
+public class HeartbeatSchedule {
+  private static final int RETRY_DIVISOR = 10;
+
+  private final long interval;
+  private final long slowCycle;
+  private final double jitter;
+  private final double maxBackoff;
+  private double backoff = 1;
+
+  /**
+   * @param interval the delay (ms) between two cycles
+   * @param ttl the ttl (s) of the entries
+   * @param timeout the time (ms) a cycle may take at most
+   * @param jitter the random deviation of each delay, as a fraction of it
+   */
+  public HeartbeatSchedule(long interval, int ttl, long timeout, double jitter) {
+    this.interval = interval;
+    this.slowCycle = timeout / 4;
+    this.jitter = jitter;
+    this.maxBackoff = Math.max(1, (ttl * 1000.0 - interval) / interval);
+  }
+
+  /**
+   * @return the delay (ms) of the first cycle, a random phase of the interval
+   */
+  public long getInitialDelay() {
+    return (long) (ThreadLocalRandom.current().nextDouble() * interval);
+  }
+
+  /**
+   * @param healthy false if the registration of a key has failed
+   * @param elapsed the time (ms) the cycle took
+   * @return the delay (ms) until the next cycle
+   */
+  public long next(boolean healthy, long elapsed) {
+    if (elapsed < slowCycle) {
+      backoff = Math.max(1, backoff / 2);
+    } else {
+      backoff = Math.min(maxBackoff, backoff * 2);
+    }
+    var delay = interval * backoff / (healthy ? 1 : RETRY_DIVISOR);
+    return Math.max(0, (long) (delay * (1 + jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1))));
+  }
+
+  /**
+   * @return the factor the interval is currently stretched by, because the cycles have become slow
+   */
+  public double getBackoff() {
+    return backoff;
+  }
+
+}
@@ -0,0 +1,7 @@
+package x1.service.registry;
+
+/**
+ * One entry of the registration: the key (file) below its directory, its value and ttl (s)
+ */
+public record Registration(String directory, String file, String value, Integer ttl) {
+}
@@ -0,0 +1,64 @@
+package x1.service.registry;
+
+import java.net.InetAddress;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The immutable registrations of all services of the host, replayed by each cycle. They are only built again after a
+ * socket binding has changed, see {@link #invalidate()}, or when the addresses of the host differ from the ones they
+ * were built with.
+ */
+public class RegistrationPlan {
+  private static final Logger LOG = LoggerFactory.getLogger(RegistrationPlan.class);
+
+  private final Supplier<List<Registration>> builder;
+  private final Supplier<Set<InetAddress>> addresses;
+  private volatile boolean invalid;
+  private Set<InetAddress> builtFor;
+  private List<Registration> registrations;
+
+  /**
+   * @param builder computes the registrations, with the lookups of the host name and the ports
+   * @param addresses a cheap check of the addresses of the host, null if they are unknown
+   */
+  public RegistrationPlan(Supplier<List<Registration>> builder, Supplier<Set<InetAddress>> addresses) {
+    this.builder = builder;
+    this.addresses = addresses;
+  }
+
+  /**
+   * Lets the next cycle build the registrations again
+   */
+  public void invalidate() {
+    invalid = true;
+  }
+
+  /**
+   * @return the registrations, built again if they are invalid or the addresses of the host have changed
+   */
+  public synchronized List<Registration> getRegistrations() {
+    var current = addresses.get();
+    if (registrations == null || invalid || current != null && !current.equals(builtFor)) {
+      if (registrations != null) {
+        LOG.info("socket bindings or host addresses changed, rebuild the registrations");
+      }
+      invalid = false;
+      builtFor = current;
+      registrations = List.copyOf(builder.get());
+    }
+    return registrations;
+  }
+
+  /**
+   * @return the registrations as they were last built, so they can be removed again
+   */
+  public synchronized List<Registration> getLastRegistrations() {
+    return registrations != null ? registrations : getRegistrations();
+  }
+
+}
@@ -0,0 +1,184 @@
+package x1.service.registry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BooleanSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import x1.service.etcd.BatchResult;
+import x1.service.etcd.ClientException;
+import x1.service.etcd.EtcdClient;
+import x1.service.etcd.Operation;
+
+/**
+ * Writes the registrations to etcd in batches and remembers the value and modifiedIndex of each written key, so an
+ * unchanged key can be refreshed instead of written again. Not thread-safe, the cycles must not overlap.
+ */
+public class RegistrationWriter {
+  private static final Logger LOG = LoggerFactory.getLogger(RegistrationWriter.class);
+  private static final Integer ECODE_NOT_A_DIR = 104;
+  /**
+   * Unchanged keys are refreshed by default
+   */
+  public static final String DEFAULT_HEARTBEAT = "true";
+
+  private final EtcdClient etcd;
+  private final int maxInFlight;
+  private final boolean heartbeat;
+  private final BooleanSupplier stopped;
+  private final Map<String, Written> registered = new HashMap<>();
+
+  /**
+   * @param etcd the client
+   * @param maxInFlight how many requests are kept in flight at once
+   * @param heartbeat if true, unchanged keys only get their ttl refreshed
+   * @param stopped true once no more keys should be written
+   */
+  public RegistrationWriter(EtcdClient etcd, int maxInFlight, boolean heartbeat, BooleanSupplier stopped) {
+    this.etcd = etcd;
+    this.maxInFlight = maxInFlight;
+    this.heartbeat = heartbeat;
+    this.stopped = stopped;
+  }
+
+  /**
+   * Registers the entries which differ from the last written ones with one batch of sets, without probing the
+   * directories, as etcd creates missing parent directories. Only if a set fails because its directory is a file
+   * (104), the file is deleted, the directory created and the set repeated. In heartbeat mode entries which are
+   * unchanged since they were written only get their ttl refreshed, if nobody else has modified them; otherwise all
+   * entries are written in each cycle. All batches end at the deadline.
+   *
+   * @return the outcome of each key, by key
+   */
+  public Map<String, BatchResult.Outcome> register(List<Registration> registrations, long deadline)
+      throws ClientException {
+    var outcomes = new TreeMap<String, BatchResult.Outcome>();
+    if (heartbeat && !stopped.getAsBoolean()) {
+      registrations = refresh(registrations, deadline, outcomes);
+    }
+    if (stopped.getAsBoolean() || registrations.isEmpty()) {
+      return outcomes;
+    }
+    var written = write(registrations, deadline, outcomes);
+    var blocked = new ArrayList<Registration>();
+    for (var i = 0; i < registrations.size(); i++) {
+      var error = written.getOutcomes().get(i).getError();
+      if (error != null && error.isEtcdError(ECODE_NOT_A_DIR)) {
+        blocked.add(registrations.get(i));
+      }
+    }
+    if (!blocked.isEmpty() && !stopped.getAsBoolean()) {
+      var directories = blocked.stream().map(Registration::directory).distinct()
+          .map(d -> Operation.delete(d).then(Operation.createDirectory(d))).toList();
+      log(etcd.batch(directories, maxInFlight, remaining(deadline)));
+      write(blocked, deadline, outcomes);
+    }
+    return outcomes;
+  }
+
+  /**
+   * Deletes the entries and forgets what was written
+   *
+   * @return the outcome of each key, by key
+   */
+  public Map<String, BatchResult.Outcome> deregister(List<Registration> registrations, long timeout)
+      throws ClientException {
+    registered.clear();
+    var deletes = registrations.stream().map(r -> Operation.delete(r.file())).toList();
+    var batch = etcd.batch(deletes, maxInFlight, timeout);
+    log(batch);
+    var outcomes = new TreeMap<String, BatchResult.Outcome>();
+    batch.getOutcomes().forEach(outcome -> outcomes.put(outcome.getOperation().getKey(), outcome));
+    return outcomes;
+  }
+
+  private BatchResult write(List<Registration> registrations, long deadline,
+      Map<String, BatchResult.Outcome> outcomes) throws ClientException {
+    var sets = registrations.stream().map(r -> Operation.set(r.file(), r.value(), r.ttl())).toList();
+    var written = etcd.batch(sets, maxInFlight, remaining(deadline));
+    log(written);
+    for (var i = 0; i < registrations.size(); i++) {
+      var outcome = written.getOutcomes().get(i);
+      var registration = registrations.get(i);
+      outcomes.put(registration.file(), outcome);
+      if (outcome.isSuccess()) {
+        registered.put(registration.file(), new Written(registration.value(), modifiedIndex(outcome)));
+      } else {
+        registered.remove(registration.file());
+      }
+    }
+    return written;
+  }
+
+  /**
+   * @return the time (ms) left until the deadline, at least 1 so an expired deadline fails the remaining operations
+   */
+  private long remaining(long deadline) {
+    return Math.max(1, deadline - System.currentTimeMillis());
+  }
+
+  /**
+   * Refreshes the ttl of all entries which were written with the same value before and have not been modified since,
+   * without rewriting the value.
+   *
+   * @return the registrations which still have to be written
+   */
+  private List<Registration> refresh(List<Registration> registrations, long deadline,
+      Map<String, BatchResult.Outcome> outcomes) throws ClientException {
+    var unchanged = registrations.stream().filter(r -> {
+      var written = registered.get(r.file());
+      return written != null && written.value().equals(r.value());
+    }).toList();
+    if (unchanged.isEmpty()) {
+      return registrations;
+    }
+    var refreshes = etcd.batch(unchanged.stream()
+        .map(r -> Operation.refresh(r.file(), r.ttl(), registered.get(r.file()).modifiedIndex())).toList(),
+        maxInFlight, remaining(deadline));
+    log(refreshes);
+    var refreshed = new HashSet<String>();
+    for (var i = 0; i < unchanged.size(); i++) {
+      var outcome = refreshes.getOutcomes().get(i);
+      var registration = unchanged.get(i);
+      if (outcome.isSuccess() && !outcome.getResult().isError()) {
+        refreshed.add(registration.file());
+        outcomes.put(registration.file(), outcome);
+        registered.put(registration.file(), new Written(registration.value(), modifiedIndex(outcome)));
+      } else {
+        registered.remove(registration.file());
+      }
+    }
+    return registrations.stream().filter(r -> !refreshed.contains(r.file())).toList();
+  }
+
+  /**
+   * @return the modifiedIndex of the written node, 0 if unknown
+   */
+  private static long modifiedIndex(BatchResult.Outcome outcome) {
+    var result = outcome.getResult();
+    return result != null && result.getNode() != null ? result.getNode().getModifiedIndex() : 0;
+  }
+
+  private void log(BatchResult batch) {
+    for (var outcome : batch.getOutcomes()) {
+      if (outcome.isSuccess()) {
+        LOG.debug("{}", outcome);
+      } else {
+        LOG.warn("{} failed: {}", outcome.getOperation(), outcome.getError().getFullMessage());
+      }
+    }
+  }
+
+  /**
+   * The value and modifiedIndex of an entry as it was last written
+   */
+  private record Written(String value, long modifiedIndex) {
+  }
+
+}
@@ -0,0 +1,77 @@
+package x1.service.registry;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.StandardLocation;
+
+/**
+ * Writes the names of the classes annotated with {@link Service} or {@link Services} to {@link #INDEX} at compile
+ * time, so the {@link ServiceRegistrator} finds them without scanning the classpath. The processor is registered in
+ * META-INF/services and runs when the application is compiled against this library. Names of an earlier index are
+ * kept as long as the classes exist, so incremental builds do not lose services.
+ */
+@SupportedAnnotationTypes({ "x1.service.registry.Service", "x1.service.registry.Services" })
+public class ServiceIndexProcessor extends AbstractProcessor {
+  public static final String INDEX = "META-INF/x1-service-registry.idx";
+
+  private final Set<String> classes = new TreeSet<>();
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+    for (var annotation : annotations) {
+      for (var element : round.getElementsAnnotatedWith(annotation)) {
+        if (element instanceof TypeElement type) {
+          classes.add(processingEnv.getElementUtils().getBinaryName(type).toString());
+        }
+      }
+    }
+    if (round.processingOver() && !classes.isEmpty()) {
+      write();
+    }
+    return false;
+  }
+
+  private void write() {
+    var filer = processingEnv.getFiler();
+    var names = new TreeSet<>(classes);
+    try {
+      var existing = filer.getResource(StandardLocation.CLASS_OUTPUT, "", INDEX);
+      try (var reader = new BufferedReader(new InputStreamReader(existing.openInputStream(), StandardCharsets.UTF_8))) {
+        reader.lines().map(String::strip).filter(name -> !name.isEmpty())
+            .filter(name -> processingEnv.getElementUtils().getTypeElement(name.replace('$', '.')) != null)
+            .forEach(names::add);
+      }
+    } catch (IOException | IllegalArgumentException e) {
+      // no earlier index
+    }
+    try {
+      var index = filer.createResource(StandardLocation.CLASS_OUTPUT, "", INDEX);
+      try (Writer writer = new OutputStreamWriter(index.openOutputStream(), StandardCharsets.UTF_8)) {
+        for (var name : names) {
+          writer.write(name);
+          writer.write('\n');
+        }
+      }
+    } catch (IOException e) {
+      processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "cannot write " + INDEX + ": " + e);
+    }
+  }
+}
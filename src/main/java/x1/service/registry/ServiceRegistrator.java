@@ -1,22 +1,45 @@
 package x1.service.registry;
 
-import jakarta.ejb.Schedule;
 import jakarta.ejb.Singleton;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.BeforeDestroyed;
+import jakarta.enterprise.event.Observes;
 import jakarta.inject.Inject;
 import javax.management.MBeanServer;
+import javax.management.NotificationListener;
 import javax.management.ObjectName;
 import jakarta.servlet.ServletContext;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
-import java.net.URI;
+import java.net.NetworkInterface;
+import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
 
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedScheduledExecutorService;
 
 import org.apache.commons.lang3.StringUtils;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
@@ -24,6 +47,7 @@ import org.reflections.Reflections;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import x1.service.etcd.BatchResult;
 import x1.service.etcd.ClientException;
 import x1.service.etcd.EtcdClient;
 import static x1.service.Constants.*;
@@ -31,17 +55,31 @@ import static x1.service.Constants.*;
 @Singleton
 public class ServiceRegistrator {
   private static final Logger LOG = LoggerFactory.getLogger(ServiceRegistrator.class);
-  private static final Integer TTL = 5 * 60;
-  private static final String ETCD_SERVICE = "x1.service.registry.etcd";
 
   private MBeanServer mbeanServer;
   private Properties properties = new Properties();
   private String[] basePackages;
-  private boolean stopped;
+  private List<Class<?>> serviceClasses = List.of();
+  private final RegistrationPlan plan = new RegistrationPlan(this::buildPlan, this::getAddresses);
+  private final List<ObjectName> bindings = new ArrayList<>();
+  private final NotificationListener bindingListener = (notification, handback) -> {
+    LOG.debug("socket binding changed: {}", notification);
+    plan.invalidate();
+  };
+  private volatile boolean stopped;
+  private volatile boolean destroyed;
+  private RegistrationWriter writer;
+  private Map<String, BatchResult.Outcome> results = Map.of();
+  private final ReentrantLock cycle = new ReentrantLock();
+  private ScheduledFuture<?> nextCycle;
+  private HeartbeatSchedule schedule;
+  private Integer ttl;
 
   @Inject
-  @ConfigProperty(name = ETCD_SERVICE, defaultValue = EtcdClient.DEFAULT_ETCD_SERVICE)
-  private URI etcdService;
+  private EtcdClient etcd;
+
+  @Resource
+  private ManagedScheduledExecutorService scheduler;
 
   @Inject
   @ConfigProperty(name = "x1.service.registry.registerIp", defaultValue = "false")
@@ -59,6 +97,41 @@ public class ServiceRegistrator {
   @ConfigProperty(name = "x1.service.registry.enabled", defaultValue = "true")
   private boolean enabled;
 
+  /**
+   * Must be switched off for etcd before 2.3, which does not know the refresh of a ttl and would clear the value
+   */
+  @Inject
+  @ConfigProperty(name = "x1.service.registry.heartbeat", defaultValue = RegistrationWriter.DEFAULT_HEARTBEAT)
+  private boolean heartbeat;
+
+  @Inject
+  @ConfigProperty(name = "x1.service.registry.maxInFlight", defaultValue = "16")
+  private int maxInFlight;
+
+  @Inject
+  @ConfigProperty(name = "x1.service.registry.timeout", defaultValue = "60000")
+  private long timeout;
+
+  @Inject
+  @ConfigProperty(name = "x1.service.registry.interval", defaultValue = "300000")
+  private long interval;
+
+  @Inject
+  @ConfigProperty(name = "x1.service.registry.ttlRatio", defaultValue = "3")
+  private double ttlRatio;
+
+  @Inject
+  @ConfigProperty(name = "x1.service.registry.jitter", defaultValue = "0.1")
+  private double jitter;
+
+  /**
+   * Without a service index the base packages are scanned, so a deployment compiled without annotation processing
+   * (the default from JDK 23 on) still registers its services
+   */
+  @Inject
+  @ConfigProperty(name = "x1.service.registry.scan", defaultValue = "true")
+  private boolean classpathScan;
+
   @Inject
   private ServletContext context;
 
@@ -75,24 +148,148 @@ public class ServiceRegistrator {
       LOG.warn(e.getMessage());
       basePackages = new String[0];
     }
+    serviceClasses = loadServiceClasses();
+    listenToSocketBindings();
+    ttl = (int) Math.ceil(interval * Math.max(1, ttlRatio) / 1000);
+    writer = new RegistrationWriter(etcd, maxInFlight, heartbeat, () -> stopped);
+    schedule = new HeartbeatSchedule(interval, ttl, timeout, jitter);
+    scheduleCycle(schedule.getInitialDelay());
   }
 
-  @Schedule(hour = "*", minute = "*/5", second = "0", persistent = false)
-  public void update() {
-    if (!checkRunningServer() || !enabled) {
+  /**
+   * Schedules the next cycle on the managed executor of the container, the cycle itself runs behind the lock
+   */
+  private synchronized void scheduleCycle(long delay) {
+    if (destroyed) {
       return;
     }
-    try (var etcd = new EtcdClient(etcdService)) {
-      LOG.info("connecting to etcd at {} -> version={}", etcdService, etcd.version());
-    } catch (Exception e) {
-      LOG.error("connection failure for etcd at " + etcdService, e);
+    try {
+      nextCycle = scheduler.schedule(this::heartbeat, delay, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      LOG.debug("heartbeat stopped");
+    }
+  }
+
+  /**
+   * Runs one cycle and schedules the next one, see {@link HeartbeatSchedule}
+   */
+  private void heartbeat() {
+    var start = System.currentTimeMillis();
+    var healthy = false;
+    try {
+      healthy = run();
+    } catch (RuntimeException e) {
+      LOG.error(null, e);
+    }
+    var elapsed = System.currentTimeMillis() - start;
+    var delay = schedule.next(healthy, elapsed);
+    if (schedule.getBackoff() > 1) {
+      LOG.info("registration at etcd({}) took {} ms, backing off to {} ms", etcd.getBaseUri(), elapsed, delay);
+    } else if (!healthy) {
+      LOG.info("registration at etcd({}) failed, retry in {} ms", etcd.getBaseUri(), delay);
+    }
+    scheduleCycle(delay);
+  }
+
+  /**
+   * Subscribes to changes of the socket bindings, so the plan is rebuilt when a port changes
+   */
+  private void listenToSocketBindings() {
+    for (var protocol : Protocol.values()) {
+      var name = getSocketBinding(protocol);
+      if (name == null || bindings.contains(name)) {
+        continue;
+      }
+      try {
+        mbeanServer.addNotificationListener(name, bindingListener, null, null);
+        bindings.add(name);
+      } catch (Exception e) {
+        LOG.debug("no notifications of {}: {}", name, e.getMessage());
+      }
     }
-    LOG.info("Scanning base packages {}", Arrays.toString(basePackages));
-    for (var packageName : basePackages) {
-      var reflections = new Reflections(packageName);
-      reflections.getTypesAnnotatedWith(Service.class).forEach(this::register);
-      reflections.getTypesAnnotatedWith(Services.class).forEach(this::registerAll);
+  }
+
+  /**
+   * Loads the service classes from the indexes written by the {@link ServiceIndexProcessor} at compile time, limited
+   * to the base packages if configured. Without an index the base packages are scanned once, if enabled, otherwise
+   * the deployment fails rather than silently registering nothing.
+   */
+  private List<Class<?>> loadServiceClasses() {
+    var classLoader = getClass().getClassLoader();
+    var names = new TreeSet<String>();
+    try {
+      var indexes = classLoader.getResources(ServiceIndexProcessor.INDEX);
+      while (indexes.hasMoreElements()) {
+        var url = indexes.nextElement();
+        try (var reader = new BufferedReader(new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))) {
+          reader.lines().map(String::strip).filter(name -> !name.isEmpty()).forEach(names::add);
+        }
+      }
+    } catch (IOException e) {
+      LOG.warn(e.getMessage());
+    }
+    var classes = new ArrayList<Class<?>>();
+    if (names.isEmpty()) {
+      if (!classpathScan) {
+        throw new IllegalStateException("no service index " + ServiceIndexProcessor.INDEX
+            + " found, compile with annotation processing (-proc:full) or set x1.service.registry.scan");
+      }
+      LOG.warn("no service index {} found, compile with annotation processing (-proc:full)",
+          ServiceIndexProcessor.INDEX);
+      LOG.info("Scanning base packages {}", Arrays.toString(basePackages));
+      var found = new HashSet<Class<?>>();
+      for (var packageName : basePackages != null ? basePackages : new String[0]) {
+        var reflections = new Reflections(packageName);
+        found.addAll(reflections.getTypesAnnotatedWith(Service.class));
+        found.addAll(reflections.getTypesAnnotatedWith(Services.class));
+      }
+      classes.addAll(found);
+      return classes;
+    }
+    for (var name : names) {
+      if (basePackages != null && Arrays.stream(basePackages).noneMatch(p -> name.startsWith(p.strip() + "."))) {
+        continue;
+      }
+      try {
+        var serviceClass = Class.forName(name, false, classLoader);
+        if (serviceClass.isAnnotationPresent(Service.class) || serviceClass.isAnnotationPresent(Services.class)) {
+          classes.add(serviceClass);
+        }
+      } catch (ClassNotFoundException | LinkageError e) {
+        LOG.warn("service class {} of the index not loaded: {}", name, e.toString());
+      }
+    }
+    LOG.debug("{} service classes indexed", classes.size());
+    return classes;
+  }
+
+  public void update() {
+    run();
+  }
+
+  /**
+   * @return false if the registration of a key has failed
+   */
+  private boolean run() {
+    if (!checkRunningServer() || !enabled || !cycle.tryLock()) {
+      return true;
+    }
+    try {
+      try {
+        LOG.info("connecting to etcd at {} -> version={}", etcd.getBaseUri(), etcd.version());
+      } catch (Exception e) {
+        LOG.error("connection failure for etcd at " + etcd.getBaseUri(), e);
+      }
+      report(writer.register(plan.getRegistrations(), System.currentTimeMillis() + timeout));
+      return results.values().stream().allMatch(BatchResult.Outcome::isSuccess);
+    } catch (ClientException e) {
+      LOG.warn(e.getFullMessage());
+    } catch (Exception e) {
+      LOG.error(null, e);
+    } finally {
+      cycle.unlock();
     }
+    return false;
   }
 
   public void stop() {
@@ -110,56 +307,115 @@ public class ServiceRegistrator {
     }
   }
 
+  /**
+   * Removes the entries before the application scoped beans are destroyed, as the {@link EtcdClient} is closed with
+   * them
+   */
+  public void beforeShutdown(@Observes @BeforeDestroyed(ApplicationScoped.class) Object event) {
+    destroy();
+  }
+
   @PreDestroy
   public void destroy() {
-    for (var packageName : basePackages) {
-      var reflections = new Reflections(packageName);
-      reflections.getTypesAnnotatedWith(Service.class).forEach(this::unregister);
-      reflections.getTypesAnnotatedWith(Services.class).forEach(this::unregisterAll);
+    synchronized (this) {
+      if (destroyed) {
+        return;
+      }
+      destroyed = true;
+      if (nextCycle != null) {
+        nextCycle.cancel(false);
+      }
+    }
+    for (var name : bindings) {
+      try {
+        mbeanServer.removeNotificationListener(name, bindingListener);
+      } catch (Exception e) {
+        LOG.debug(e.getMessage());
+      }
+    }
+    if (!enabled) {
+      return;
+    }
+    cycle.lock();
+    try {
+      var registrations = plan.getLastRegistrations();
+      for (var registration : registrations) {
+        LOG.info("unregister {} at etcd({})", registration.file(), etcd.getBaseUri());
+      }
+      report(writer.deregister(registrations, timeout));
+    } catch (ClientException e) {
+      LOG.warn(e.getFullMessage());
+    } finally {
+      cycle.unlock();
     }
   }
 
-  private void registerAll(Class<?> serviceClass) {
-    for (var service : serviceClass.getAnnotation(Services.class).services()) {
-      register(serviceClass, service);
-    }
+  /**
+   * Computes all entries with one lookup of the host name and one lookup of the port per protocol
+   */
+  private List<Registration> buildPlan() {
+    var hostName = getHostName();
+    var ports = new EnumMap<Protocol, Integer>(Protocol.class);
+    var registrations = new ArrayList<Registration>();
+    scan((serviceClass, service) -> {
+      LOG.info("register ({}) at etcd({})", service, etcd.getBaseUri());
+      for (var protocol : service.protocols()) {
+        var port = ports.containsKey(protocol) ? ports.get(protocol) : getPort(protocol);
+        ports.put(protocol, port);
+        var directory = getDirectory(serviceClass, service, protocol);
+        registrations.add(new Registration(directory, directory + "/" + hostName,
+            getValue(service, protocol, hostName, port), ttl));
+      }
+    });
+    return registrations;
   }
 
-  private void register(Class<?> serviceClass) {
-    register(serviceClass, serviceClass.getAnnotation(Service.class));
+  /**
+   * @return the addresses of the network interfaces, a cheap check for a changed host address without DNS lookup,
+   *         null if they are unknown
+   */
+  private Set<InetAddress> getAddresses() {
+    try {
+      return NetworkInterface.networkInterfaces().flatMap(NetworkInterface::inetAddresses)
+          .collect(Collectors.toUnmodifiableSet());
+    } catch (SocketException e) {
+      LOG.debug(e.getMessage());
+      return null;
+    }
   }
 
-  private void register(Class<?> serviceClass, Service service) {
-    try (var etcd = new EtcdClient(etcdService)) {
-      for (var protocol : service.protocols()) {
-        if (stopped) {
-          break;
+  private void scan(BiConsumer<Class<?>, Service> consumer) {
+    for (var serviceClass : serviceClasses) {
+      var service = serviceClass.getAnnotation(Service.class);
+      if (service != null) {
+        consumer.accept(serviceClass, service);
+      }
+      var services = serviceClass.getAnnotation(Services.class);
+      if (services != null) {
+        for (var s : services.services()) {
+          consumer.accept(serviceClass, s);
         }
-        LOG.info("register ({}) at etcd({})", service, etcdService);
-        var directory = getDirectory(serviceClass, service, protocol);
-        ensureDirectoryExists(etcd, directory);
-        var hostName = getHostName();
-        var file = directory + "/" + hostName;
-        var value = getValue(service, protocol, hostName);
-        var result = etcd.set(file, value, TTL);
-        LOG.debug("set {} to {} -> {}", file, value, result);
       }
-    } catch (ClientException e) {
-      LOG.warn(e.getFullMessage());
-    } catch (Exception e) {
-      LOG.error(null, e);
     }
   }
 
-  private void ensureDirectoryExists(EtcdClient etcd, String path) throws ClientException {
-    var result = etcd.get(path);
-    if (result == null) {
-      result = etcd.createDirectory(path);
-      LOG.debug("create directory {} -> {}", path, result);
-    } else if (!result.getNode().isDir()) {
-      result = etcd.delete(path);
-      result = etcd.createDirectory(path);
-      LOG.debug("delete and recreate directory {} -> {}", path, result);
+  /**
+   * @return the outcome of the last write or delete of each key
+   */
+  public Map<String, BatchResult.Outcome> getResults() {
+    return results;
+  }
+
+  /**
+   * Keeps the outcome of each key and summarizes the cycle
+   */
+  private void report(Map<String, BatchResult.Outcome> outcomes) {
+    results = Collections.unmodifiableMap(outcomes);
+    var failed = outcomes.entrySet().stream().filter(e -> !e.getValue().isSuccess()).map(Map.Entry::getKey).toList();
+    if (failed.isEmpty()) {
+      LOG.debug("{} keys done at etcd({})", outcomes.size(), etcd.getBaseUri());
+    } else {
+      LOG.warn("{} of {} keys failed at etcd({}): {}", failed.size(), outcomes.size(), etcd.getBaseUri(), failed);
     }
   }
 
@@ -168,10 +424,9 @@ public class ServiceRegistrator {
         + service.version() + "/" + protocol.name().toLowerCase() + "/" + stage.toLowerCase();
   }
 
-  private String getValue(Service service, Protocol protocol, String hostName) {
+  private String getValue(Service service, Protocol protocol, String hostName, Integer port) {
     var sb = new StringBuilder();
     addLine(sb, HOST_NAME, hostName);
-    var port = getPort(protocol);
     if (port != null) {
       addLine(sb, PORT, port.toString());
     }
@@ -231,39 +486,6 @@ public class ServiceRegistrator {
     return sb;
   }
 
-  private void unregisterAll(Class<?> serviceClass) {
-    for (var service : serviceClass.getAnnotation(Services.class).services()) {
-      unregister(serviceClass, service);
-    }
-  }
-
-  private void unregister(Class<?> serviceClass) {
-    unregister(serviceClass, serviceClass.getAnnotation(Service.class));
-  }
-
-  private void unregister(Class<?> serviceClass, Service service) {
-    if (enabled) {
-      try (var etcd = new EtcdClient(etcdService)) {
-        for (var protocol : service.protocols()) {
-          LOG.info("unregister ({}) at etcd({})", service, etcdService);
-          var file = getDirectory(serviceClass, service, protocol) + "/" + getHostName();
-          unregister(etcd, file);
-        }
-      } catch (IOException e) {
-        LOG.error(null, e);
-      }
-    }
-  }
-
-  private void unregister(EtcdClient etcd, String file) {
-    try {
-      var result = etcd.delete(file);
-      LOG.debug("delete {} -> {}", file, result);
-    } catch (ClientException e) {
-      LOG.warn(e.getFullMessage());
-    }
-  }
-
   private String getHostName() {
     if (registerIp) {
       try {
@@ -280,29 +502,35 @@ public class ServiceRegistrator {
     }
   }
 
-  private Integer getPort(Protocol protocol) {
+  private ObjectName getSocketBinding(Protocol protocol) {
     try {
-      ObjectName name;
       switch (protocol) {
       case HTTP:
       case WS:
       case EJB:
-        name = new ObjectName("jboss.as:socket-binding-group=standard-sockets,socket-binding=http");
-        break;
+        return new ObjectName("jboss.as:socket-binding-group=standard-sockets,socket-binding=http");
       case HTTPS:
       case WSS:
-        name = new ObjectName("jboss.as:socket-binding-group=standard-sockets,socket-binding=https");
-        break;
+        return new ObjectName("jboss.as:socket-binding-group=standard-sockets,socket-binding=https");
       case STOMP_WS:
       case STOMP_WSS:
-        name = new ObjectName("jboss.as:socket-binding-group=standard-sockets,socket-binding=messaging-stomp");
-        break;
+        return new ObjectName("jboss.as:socket-binding-group=standard-sockets,socket-binding=messaging-stomp");
       case AMQP:
-        name = new ObjectName("jboss.as:socket-binding-group=standard-sockets,socket-binding=messaging-amqp");
-        break;
+        return new ObjectName("jboss.as:socket-binding-group=standard-sockets,socket-binding=messaging-amqp");
       default:
         return null;
       }
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  private Integer getPort(Protocol protocol) {
+    var name = getSocketBinding(protocol);
+    if (name == null) {
+      return null;
+    }
+    try {
       return (Integer) mbeanServer.getAttribute(name, "port");
     } catch (Exception e) {
       return null;
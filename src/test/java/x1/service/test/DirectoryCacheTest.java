@@ -0,0 +1,173 @@
+package x1.service.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static x1.service.test.Nodes.DIRECTORY;
+import static x1.service.test.Nodes.dir;
+import static x1.service.test.Nodes.event;
+import static x1.service.test.Nodes.node;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import x1.service.client.DirectoryCache;
+import x1.service.etcd.Node;
+
+@DisplayName("DirectoryCache Test")
+public class DirectoryCacheTest {
+  @Test
+  public void testHitsAndMisses() {
+    var cache = new DirectoryCache(10, 60000);
+    assertThat(cache.get(DIRECTORY)).isNull();
+    cache.put(DIRECTORY, List.of(node(DIRECTORY + "/host1")), cache.getGeneration(DIRECTORY));
+    assertThat(cache.get(DIRECTORY)).extracting("key").containsExactly(DIRECTORY + "/host1");
+    assertThat(cache.getHits()).isEqualTo(1);
+    assertThat(cache.getMisses()).isEqualTo(1);
+  }
+
+  @Test
+  public void testEviction() throws Exception {
+    var cache = new DirectoryCache(2, 60000);
+    cache.put(DIRECTORY + "/1", List.of(), cache.getGeneration(DIRECTORY + "/1"));
+    Thread.sleep(1);
+    cache.put(DIRECTORY + "/2", List.of(), cache.getGeneration(DIRECTORY + "/2"));
+    Thread.sleep(1);
+    cache.put(DIRECTORY + "/3", List.of(), cache.getGeneration(DIRECTORY + "/3"));
+    assertThat(cache.size()).isEqualTo(2);
+    assertThat(cache.get(DIRECTORY + "/1")).isNull();
+    assertThat(cache.get(DIRECTORY + "/3")).isEmpty();
+
+    var expiring = new DirectoryCache(2, 0);
+    expiring.put(DIRECTORY, List.of(), expiring.getGeneration(DIRECTORY));
+    assertThat(expiring.get(DIRECTORY)).isNull();
+    assertThat(expiring.getEvictions()).isEqualTo(1);
+  }
+
+  @Test
+  public void testEvictParsedEndpoints() throws Exception {
+    var cache = new DirectoryCache(2, 60000);
+    var host1 = node(DIRECTORY + "/1/host1");
+    var outside = node(DIRECTORY + "/other/host1");
+    cache.put(DIRECTORY + "/1", List.of(host1), cache.getGeneration(DIRECTORY + "/1"));
+    var parsed = cache.toEndpoint(host1);
+    var parsedOutside = cache.toEndpoint(outside);
+    assertThat(cache.toEndpoint(outside)).isSameAs(parsedOutside);
+    Thread.sleep(1);
+    cache.put(DIRECTORY + "/2", List.of(), cache.getGeneration(DIRECTORY + "/2"));
+    Thread.sleep(1);
+    cache.put(DIRECTORY + "/3", List.of(), cache.getGeneration(DIRECTORY + "/3"));
+    // evicted with the directory, and not cached by any directory
+    assertThat(cache.get(DIRECTORY + "/1")).isNull();
+    assertThat(cache.toEndpoint(host1)).isNotSameAs(parsed);
+    assertThat(cache.toEndpoint(outside)).isNotSameAs(parsedOutside);
+  }
+
+  @Test
+  public void testInvalidateByEvent() {
+    var cache = new DirectoryCache(10, 60000);
+    cache.put(DIRECTORY, List.of(node(DIRECTORY + "/host1")), cache.getGeneration(DIRECTORY));
+    cache.put(DIRECTORY + "-other", List.of(), cache.getGeneration(DIRECTORY + "-other"));
+    cache.onEvent(event("expire", node(DIRECTORY + "/host1")));
+    assertThat(cache.get(DIRECTORY)).isNull();
+    assertThat(cache.get(DIRECTORY + "-other")).isEmpty();
+
+    cache.put(DIRECTORY, List.of(), cache.getGeneration(DIRECTORY));
+    cache.onEvent(event("expire", dir("/x1/rest")));
+    assertThat(cache.size()).isZero();
+  }
+
+  @Test
+  public void testOutdatedPutIsDropped() {
+    var cache = new DirectoryCache(10, 60000);
+    var generation = cache.getGeneration(DIRECTORY);
+    cache.invalidate(DIRECTORY + "/host1", false);
+    assertThat(cache.put(DIRECTORY, List.of(node(DIRECTORY + "/host1")), generation)).hasSize(1);
+    assertThat(cache.get(DIRECTORY)).isNull();
+  }
+
+  @Test
+  public void testEventsOfOtherDirectoriesKeepRead() {
+    var cache = new DirectoryCache(10, 60000);
+    var generation = cache.getGeneration(DIRECTORY);
+    cache.invalidate(DIRECTORY + "-other/host1", false);
+    cache.put(DIRECTORY, List.of(node(DIRECTORY + "/host1")), generation);
+    assertThat(cache.get(DIRECTORY)).hasSize(1);
+
+    // an outdated read does not remove the entry of a newer one
+    cache.invalidate(DIRECTORY + "/host1", false);
+    var current = cache.getGeneration(DIRECTORY);
+    cache.put(DIRECTORY, List.of(node(DIRECTORY + "/host2")), current);
+    cache.put(DIRECTORY, List.of(node(DIRECTORY + "/host1")), generation);
+    assertThat(cache.get(DIRECTORY)).extracting("key").containsExactly(DIRECTORY + "/host2");
+  }
+
+  @Test
+  public void testCoalesce() {
+    var cache = new DirectoryCache(10, 60000);
+    var reads = new AtomicInteger();
+    var read = new CompletableFuture<List<Node>>();
+    var first = cache.coalesce(DIRECTORY, () -> {
+      reads.incrementAndGet();
+      return read;
+    });
+    var second = cache.coalesce(DIRECTORY, () -> {
+      reads.incrementAndGet();
+      return read;
+    });
+    read.complete(List.of(node(DIRECTORY + "/host1")));
+    assertThat(first.join()).isSameAs(second.join());
+    assertThat(reads).hasValue(1);
+    assertThat(cache.getCoalesced()).isEqualTo(1);
+    cache.coalesce(DIRECTORY, () -> {
+      reads.incrementAndGet();
+      return CompletableFuture.completedFuture(List.of());
+    });
+    assertThat(reads).hasValue(2);
+  }
+
+  @Test
+  public void testNoCoalesceAfterInvalidation() {
+    var cache = new DirectoryCache(10, 60000);
+    var before = new CompletableFuture<List<Node>>();
+    var first = cache.coalesce(DIRECTORY, () -> before);
+    cache.invalidate(DIRECTORY + "/host2", false);
+    var after = CompletableFuture.completedFuture(List.of(node(DIRECTORY + "/host2")));
+    var second = cache.coalesce(DIRECTORY, () -> after);
+    before.complete(List.of(node(DIRECTORY + "/host1")));
+    assertThat(first.join()).extracting("key").containsExactly(DIRECTORY + "/host1");
+    assertThat(second.join()).extracting("key").containsExactly(DIRECTORY + "/host2");
+    assertThat(cache.getCoalesced()).isZero();
+  }
+
+  @Test
+  public void testNegativeCaching() {
+    var cache = new DirectoryCache(10, 60000, 60000);
+    cache.putMissing(DIRECTORY, cache.getGeneration(DIRECTORY));
+    assertThat(cache.get(DIRECTORY)).isEmpty();
+    cache.invalidate(DIRECTORY + "/host1", false);
+    assertThat(cache.get(DIRECTORY)).isNull();
+
+    var disabled = new DirectoryCache(10, 60000);
+    disabled.putMissing(DIRECTORY, disabled.getGeneration(DIRECTORY));
+    assertThat(disabled.get(DIRECTORY)).isNull();
+  }
+
+  @Test
+  public void testRefreshAfterSoftTtl() throws Exception {
+    var cache = new DirectoryCache(10, 60000, 0, 0, Runnable::run);
+    var reads = new AtomicInteger();
+    Supplier<CompletableFuture<List<Node>>> read = () -> {
+      reads.incrementAndGet();
+      return CompletableFuture.completedFuture(cache.put(DIRECTORY, List.of(node(DIRECTORY + "/host2")), 0));
+    };
+    cache.put(DIRECTORY, List.of(node(DIRECTORY + "/host1")), cache.getGeneration(DIRECTORY));
+    assertThat(cache.get(DIRECTORY, read)).extracting("key").containsExactly(DIRECTORY + "/host1");
+    assertThat(reads).hasValue(1);
+    assertThat(cache.getRefreshes()).isEqualTo(1);
+    assertThat(cache.get(DIRECTORY)).extracting("key").containsExactly(DIRECTORY + "/host2");
+  }
+}
@@ -0,0 +1,265 @@
+package x1.service.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import x1.service.etcd.ClientConfig;
+import x1.service.etcd.ClientException;
+import x1.service.etcd.Consistency;
+import x1.service.etcd.Endpoint;
+import x1.service.etcd.EtcdClient;
+import x1.service.etcd.Operation;
+import x1.service.etcd.Result;
+import x1.service.etcd.WatchListener;
+import x1.service.etcd.WatchSubscription;
+
+@DisplayName("EtcdClient Test")
+public class EtcdClientTest {
+  private static final String KEY = "/x1/rest/x1.service.test.ShareResource/1.0/https/local/host1";
+  private static final String NODE = "{\"action\":\"get\",\"node\":{\"key\":\"" + KEY
+      + "\",\"value\":\"hostName=host1\\n\",\"modifiedIndex\":7,\"createdIndex\":7}}";
+
+  private HttpServer server;
+  private ExecutorService executor;
+  private final AtomicInteger requests = new AtomicInteger();
+  private final AtomicInteger failures = new AtomicInteger();
+  private final AtomicInteger slow = new AtomicInteger();
+  private final AtomicInteger watches = new AtomicInteger();
+  private volatile String path;
+  private volatile String query;
+  private volatile String body;
+  private volatile int status = 200;
+  private EtcdClient etcd;
+
+  @BeforeEach
+  public void setup() throws IOException {
+    executor = Executors.newCachedThreadPool();
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.setExecutor(executor);
+    server.createContext("/", this::handle);
+    server.start();
+  }
+
+  @AfterEach
+  public void tearDown() throws IOException {
+    if (etcd != null) {
+      etcd.close();
+    }
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testRetryIdempotentRequest() throws Exception {
+    etcd = client(new ClientConfig());
+    failures.set(2);
+    assertThat(etcd.get(KEY).getNode().getValue()).isEqualTo("hostName=host1\n");
+    assertThat(requests).hasValue(3);
+  }
+
+  @Test
+  public void testGiveUpAfterRetries() throws Exception {
+    var config = new ClientConfig();
+    config.setRetries(1);
+    etcd = client(config);
+    failures.set(5);
+    assertThatThrownBy(() -> etcd.get(KEY)).isInstanceOf(ClientException.class);
+    assertThat(requests).hasValue(2);
+  }
+
+  @Test
+  public void testNoRetryOfCompareAndSwap() throws Exception {
+    etcd = client(new ClientConfig());
+    failures.set(1);
+    assertThatThrownBy(() -> etcd.cas(KEY, "a", "b")).isInstanceOf(ClientException.class);
+    assertThat(requests).hasValue(1);
+  }
+
+  @Test
+  public void testHedgedRead() throws Exception {
+    var config = new ClientConfig();
+    config.setHedgePercentile(90);
+    config.setHedgeMinDelay(1);
+    config.setReadTimeout(10000);
+    etcd = client(config);
+    for (var i = 0; i < 100; i++) {
+      etcd.get(KEY);
+    }
+    requests.set(0);
+    slow.set(1);
+    var start = System.nanoTime();
+    assertThat(etcd.get(KEY).getNode().getValue()).isEqualTo("hostName=host1\n");
+    assertThat(System.nanoTime() - start).isLessThan(2_000_000_000L);
+    assertThat(requests).hasValue(2);
+  }
+
+  @Test
+  public void testConsistency() throws Exception {
+    var config = new ClientConfig();
+    config.setConsistency(Consistency.QUORUM);
+    etcd = client(config);
+    etcd.get(KEY);
+    assertThat(query).isEqualTo("quorum=true");
+    etcd.get(KEY, Consistency.SERIALIZABLE);
+    assertThat(query).isNull();
+  }
+
+  @Test
+  public void testBatchDeadline() throws Exception {
+    etcd = client(new ClientConfig());
+    slow.set(1);
+    var start = System.nanoTime();
+    var batch = etcd.batch(List.of(Operation.get(KEY), Operation.get(KEY), Operation.get(KEY)), 1, 500);
+    assertThat(System.nanoTime() - start).isLessThan(2_000_000_000L);
+    assertThat(batch.getOutcomes()).hasSize(3);
+    assertThat(batch.getFailures()).hasSize(3);
+    assertThat(requests).hasValue(1);
+  }
+
+  @Test
+  public void testLongBatchOfCompletedOperations() throws Exception {
+    // an operation which completes right away, e.g. from a cache
+    etcd = new EtcdClient(List.of(uri(server)), new ClientConfig()) {
+      @Override
+      public CompletableFuture<Result> getAsync(String key) {
+        return CompletableFuture.completedFuture(new Result());
+      }
+    };
+    var operations = new ArrayList<Operation>();
+    for (var i = 0; i < 100000; i++) {
+      operations.add(Operation.get(KEY));
+    }
+    var batch = etcd.batch(operations, 1, 10000);
+    assertThat(batch.getOutcomes()).hasSize(100000);
+    assertThat(batch.isSuccess()).isTrue();
+    assertThat(requests).hasValue(0);
+  }
+
+  @Test
+  public void testConditionalRefresh() throws Exception {
+    etcd = client(new ClientConfig());
+    var result = etcd.refreshAsync(KEY, 60, 7).get();
+    assertThat(result.getNode().getModifiedIndex()).isEqualTo(7);
+    assertThat(body).contains("refresh=true", "prevIndex=7", "ttl=60").doesNotContain("value=");
+    assertThat(requests).hasValue(1);
+  }
+
+  @Test
+  public void testBasePath() throws Exception {
+    etcd = new EtcdClient(List.of(URI.create(uri(server) + "/etcd/")), new ClientConfig());
+    etcd.get(KEY, Consistency.QUORUM);
+    assertThat(path).isEqualTo("/etcd/v2/keys" + KEY);
+    assertThat(query).isEqualTo("quorum=true");
+    etcd.set(KEY, "hostName=host1\n", 60);
+    assertThat(path).isEqualTo("/etcd/v2/keys" + KEY);
+    assertThat(body).contains("ttl=60");
+    etcd.version();
+    assertThat(path).isEqualTo("/etcd/version");
+  }
+
+  @Test
+  public void testVersionError() throws Exception {
+    etcd = client(new ClientConfig());
+    assertThat(etcd.version()).contains("hostName=host1");
+    // a bad request has a body, but no version
+    status = 400;
+    assertThatThrownBy(() -> etcd.version()).isInstanceOf(ClientException.class)
+        .hasMessageContaining("Error while fetching versions");
+  }
+
+  @Test
+  public void testIdleWatchKeepsMemberHealthy() throws Exception {
+    var other = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    other.setExecutor(executor);
+    other.createContext("/", this::handle);
+    other.start();
+    try {
+      var config = new ClientConfig();
+      config.setWatchTimeout(200);
+      etcd = new EtcdClient(List.of(uri(server), uri(other)), config);
+      var preferred = etcd.getBaseUri();
+      var watch = new WatchSubscription(etcd, "/x1", true, new WatchListener() {
+        public void onEvent(Result event) {
+        }
+
+        public void onResync(Result snapshot) {
+        }
+      }).start(1L);
+      try {
+        // the reactor checks the timeout about once a second
+        Thread.sleep(2500);
+        assertThat(watch.isClosed()).isFalse();
+      } finally {
+        watch.close();
+      }
+      assertThat(watches.get()).isGreaterThan(1);
+      assertThat(etcd.getEndpoints()).allMatch(Endpoint::isHealthy);
+      assertThat(etcd.getBaseUri()).isEqualTo(preferred);
+    } finally {
+      other.stop(0);
+    }
+  }
+
+  private EtcdClient client(ClientConfig config) {
+    return new EtcdClient(List.of(uri(server)), config);
+  }
+
+  private static URI uri(HttpServer server) {
+    return URI.create("http://127.0.0.1:" + server.getAddress().getPort());
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    requests.incrementAndGet();
+    path = exchange.getRequestURI().getRawPath();
+    query = exchange.getRequestURI().getRawQuery();
+    body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+    if (query != null && query.contains("wait=true")) {
+      // a long-poll without events
+      watches.incrementAndGet();
+      try {
+        Thread.sleep(5000);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      exchange.close();
+      return;
+    }
+    if (failures.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+      exchange.sendResponseHeaders(503, -1);
+      exchange.close();
+      return;
+    }
+    if (slow.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+      try {
+        Thread.sleep(3000);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    var body = NODE.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().add("Content-Type", "application/json");
+    exchange.getResponseHeaders().add("X-Etcd-Index", "7");
+    exchange.sendResponseHeaders(status, body.length);
+    exchange.getResponseBody().write(body);
+    exchange.close();
+  }
+}
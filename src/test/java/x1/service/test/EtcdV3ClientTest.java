@@ -0,0 +1,335 @@
+package x1.service.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import x1.service.etcd.ClientConfig;
+import x1.service.etcd.EtcdV3Client;
+import x1.service.etcd.Projection;
+
+@DisplayName("EtcdV3Client Test")
+public class EtcdV3ClientTest {
+  private static final String DIRECTORY = "/x1/rest/x1.service.test.ShareResource/1.0/https/local";
+
+  private StandIn standIn;
+  private EtcdV3Client etcd;
+
+  @BeforeEach
+  public void setup() throws IOException {
+    standIn = new StandIn();
+    etcd = new EtcdV3Client(standIn.getUri());
+  }
+
+  @AfterEach
+  public void tearDown() throws IOException {
+    etcd.close();
+    standIn.stop();
+  }
+
+  @Test
+  public void testSetAndResolveDirectory() throws Exception {
+    etcd.set(DIRECTORY + "/host1", "hostName=host1\n", 300);
+    etcd.set(DIRECTORY + "/host2", "hostName=host2\n", 300);
+    etcd.set(DIRECTORY + "-other/host3", "hostName=host3\n", 300);
+
+    var result = etcd.get(DIRECTORY);
+    assertThat(result.getNode().isDir()).isTrue();
+    assertThat(result.getNode().getNodes()).extracting("key").containsExactly(DIRECTORY + "/host1",
+        DIRECTORY + "/host2");
+    assertThat(result.getNode().getNodes()).extracting("value").containsExactly("hostName=host1\n",
+        "hostName=host2\n");
+    assertThat(standIn.ranges).isEqualTo(1);
+    // one lease for all keys
+    assertThat(standIn.leases).hasSize(1);
+    assertThat(standIn.kvs.values()).extracting(kv -> kv.lease).containsOnly(standIn.leases.keySet().iterator().next());
+  }
+
+  @Test
+  public void testGetKeyAndMissingKey() throws Exception {
+    etcd.set(DIRECTORY + "/host1", "hostName=host1\n");
+    assertThat(etcd.get(DIRECTORY + "/host1").getNode().getValue()).isEqualTo("hostName=host1\n");
+    assertThat(etcd.get(DIRECTORY + "/host1", Projection.KEYS_ONLY).getNode().getValue()).isNull();
+    assertThat(etcd.get(DIRECTORY + "/host2")).isNull();
+    assertThat(etcd.get("/x1", Projection.FULL, false).getNode().getNodes()).extracting("key", "dir")
+        .containsExactly(tuple("/x1/rest", true));
+  }
+
+  @Test
+  public void testDeleteAndCas() throws Exception {
+    etcd.set(DIRECTORY + "/host1", "a");
+    assertThat(etcd.cas(DIRECTORY + "/host1", "b", "c").getErrorCode()).isEqualTo(101);
+    assertThat(etcd.cas(DIRECTORY + "/host1", "a", "c").isError()).isFalse();
+    assertThat(etcd.get(DIRECTORY + "/host1").getNode().getValue()).isEqualTo("c");
+    assertThat(etcd.delete(DIRECTORY + "/host1").getPrevNode().getValue()).isEqualTo("c");
+    assertThat(etcd.delete(DIRECTORY + "/host1").getErrorCode()).isEqualTo(100);
+  }
+
+  @Test
+  public void testKeepAlive() throws Exception {
+    assertThat(etcd.keepAliveAsync().get()).isFalse();
+    etcd.set(DIRECTORY + "/host1", "a", 300);
+    assertThat(etcd.keepAliveAsync().get()).isTrue();
+    standIn.leases.clear();
+    assertThat(etcd.keepAliveAsync().get()).isFalse();
+    etcd.set(DIRECTORY + "/host1", "a", 300);
+    assertThat(standIn.leases).hasSize(1);
+  }
+
+  @Test
+  public void testKeepAliveOnGivenScheduler() throws Exception {
+    var scheduler = Executors.newSingleThreadScheduledExecutor();
+    try {
+      var client = new EtcdV3Client(List.of(standIn.getUri()), new ClientConfig(), scheduler);
+      client.set(DIRECTORY + "/host1", "a", 3);
+      for (var i = 0; i < 30 && standIn.keepAlives == 0; i++) {
+        Thread.sleep(100);
+      }
+      assertThat(standIn.keepAlives).isPositive();
+      client.close();
+      // the scheduler is not the one of the client
+      assertThat(scheduler.isShutdown()).isFalse();
+      assertThat(standIn.leases).isEmpty();
+    } finally {
+      scheduler.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testRangeReadFailsOver() throws Exception {
+    etcd.set(DIRECTORY + "/host1", "hostName=host1\n", 300);
+    // a member which accepts the connection, but drops the request
+    try (var dropping = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+      Thread.ofVirtual().start(() -> {
+        while (!dropping.isClosed()) {
+          try (var socket = dropping.accept()) {
+            socket.setSoLinger(true, 0);
+          } catch (IOException e) {
+            // closed
+          }
+        }
+      });
+      var config = new ClientConfig();
+      config.setRetries(0);
+      var client = new EtcdV3Client(List.of(URI.create("http://127.0.0.1:" + dropping.getLocalPort()),
+          standIn.getUri()), config);
+      try {
+        // the range read is a POST, but a read which the next member may serve
+        assertThat(client.get(DIRECTORY).getNode().getNodes()).extracting("key").containsExactly(DIRECTORY + "/host1");
+      } finally {
+        client.close();
+      }
+    }
+  }
+
+  @Test
+  public void testRefresh() throws Exception {
+    assertThat(etcd.refresh(DIRECTORY + "/host1", 300).getErrorCode()).isEqualTo(100);
+    etcd.set(DIRECTORY + "/host1", "a", 300);
+    var result = etcd.refresh(DIRECTORY + "/host1", 300);
+    assertThat(result.isError()).isFalse();
+    assertThat(result.getNode().getModifiedIndex()).isEqualTo(standIn.kvs.get(DIRECTORY + "/host1").mod);
+    assertThat(etcd.refresh(DIRECTORY + "/host2", 300).getErrorCode()).isEqualTo(100);
+    // the lease is kept alive in the background, not once per key
+    assertThat(standIn.keepAlives).isZero();
+    standIn.expire();
+    assertThat(etcd.refresh(DIRECTORY + "/host1", 300).getErrorCode()).isEqualTo(100);
+  }
+
+  @Test
+  public void testConditionalRefresh() throws Exception {
+    etcd.set(DIRECTORY + "/host1", "a", 300);
+    var mod = standIn.kvs.get(DIRECTORY + "/host1").mod;
+    var result = etcd.refreshAsync(DIRECTORY + "/host1", 300, mod).get();
+    assertThat(result.isError()).isFalse();
+    assertThat(result.getNode().getModifiedIndex()).isEqualTo(mod);
+    assertThat(etcd.refreshAsync(DIRECTORY + "/host1", 300, mod - 1).get().getErrorCode()).isEqualTo(101);
+    assertThat(etcd.refreshAsync(DIRECTORY + "/host2", 300, mod).get().getErrorCode()).isEqualTo(100);
+    assertThat(standIn.keepAlives).isZero();
+  }
+
+  /**
+   * A minimal in-memory stand-in for the etcd v3 JSON gateway
+   */
+  private static class StandIn {
+    private final HttpServer server;
+    private final TreeMap<String, Kv> kvs = new TreeMap<>();
+    private final Map<Long, Long> leases = new HashMap<>();
+    private long revision = 1;
+    private long leaseId = 1000;
+    private int ranges;
+    private volatile int keepAlives;
+
+    private static class Kv {
+      private String value;
+      private long create;
+      private long mod;
+      private long lease;
+    }
+
+    StandIn() throws IOException {
+      server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+      server.createContext("/", this::handle);
+      server.start();
+    }
+
+    URI getUri() {
+      return URI.create("http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    void stop() {
+      server.stop(0);
+    }
+
+    private synchronized void handle(HttpExchange exchange) throws IOException {
+      var request = JsonParser.parseString(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8))
+          .getAsJsonObject();
+      var response = new JsonObject();
+      switch (exchange.getRequestURI().getPath()) {
+      case "/v3/kv/range":
+        ranges++;
+        response.add("kvs", range(request, !request.has("keys_only")));
+        break;
+      case "/v3/kv/put":
+        var prev = kvs.get(decode(request, "key"));
+        if (prev != null) {
+          response.add("prev_kv", kv(decode(request, "key"), prev, true));
+        }
+        put(decode(request, "key"), decode(request, "value"), request.has("lease") ? request.get("lease").getAsLong() : 0);
+        break;
+      case "/v3/kv/deleterange":
+        var deleted = range(request, true);
+        deleted.forEach(kv -> kvs.remove(decode(kv.getAsJsonObject(), "key")));
+        response.add("prev_kvs", deleted);
+        revision++;
+        break;
+      case "/v3/kv/txn":
+        var compare = request.getAsJsonArray("compare").get(0).getAsJsonObject();
+        var current = kvs.get(decode(compare, "key"));
+        var succeeded = current != null && ("MOD".equals(compare.get("target").getAsString())
+            ? current.mod == compare.get("mod_revision").getAsLong()
+            : current.value.equals(decode(compare, "value")));
+        var op = request.getAsJsonArray(succeeded ? "success" : "failure");
+        var responses = new JsonArray();
+        if (op != null && op.get(0).getAsJsonObject().has("request_put")) {
+          var put = op.get(0).getAsJsonObject().getAsJsonObject("request_put");
+          put(decode(put, "key"), decode(put, "value"), current.lease);
+        } else if (op != null && op.get(0).getAsJsonObject().has("request_range")) {
+          var range = new JsonObject();
+          range.add("kvs", range(op.get(0).getAsJsonObject().getAsJsonObject("request_range"), false));
+          var rangeResponse = new JsonObject();
+          rangeResponse.add("response_range", range);
+          responses.add(rangeResponse);
+        }
+        response.addProperty("succeeded", succeeded);
+        response.add("responses", responses);
+        break;
+      case "/v3/lease/grant":
+        leases.put(++leaseId, request.get("TTL").getAsLong());
+        response.addProperty("ID", Long.toString(leaseId));
+        response.addProperty("TTL", request.get("TTL").getAsString());
+        break;
+      case "/v3/lease/keepalive":
+        keepAlives++;
+        var ttl = leases.get(request.get("ID").getAsLong());
+        var result = new JsonObject();
+        result.addProperty("ID", request.get("ID").getAsString());
+        if (ttl != null) {
+          result.addProperty("TTL", Long.toString(ttl));
+        }
+        response.add("result", result);
+        break;
+      case "/v3/lease/revoke":
+        var id = request.get("ID").getAsLong();
+        leases.remove(id);
+        kvs.values().removeIf(kv -> kv.lease == id);
+        break;
+      default:
+        exchange.sendResponseHeaders(404, -1);
+        exchange.close();
+        return;
+      }
+      var header = new JsonObject();
+      header.addProperty("revision", Long.toString(revision));
+      response.add("header", header);
+      var body = response.toString().getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().add("Content-Type", "application/json");
+      exchange.sendResponseHeaders(200, body.length);
+      exchange.getResponseBody().write(body);
+      exchange.close();
+    }
+
+    /**
+     * Expires all leases with their keys
+     */
+    synchronized void expire() {
+      leases.clear();
+      kvs.values().removeIf(kv -> kv.lease != 0);
+    }
+
+    private void put(String key, String value, long lease) {
+      var kv = kvs.computeIfAbsent(key, k -> new Kv());
+      revision++;
+      if (kv.create == 0) {
+        kv.create = revision;
+      }
+      kv.mod = revision;
+      kv.value = value;
+      kv.lease = lease;
+    }
+
+    private JsonArray range(JsonObject request, boolean values) {
+      var key = decode(request, "key");
+      var array = new JsonArray();
+      var entries = request.has("range_end") ? kvs.subMap(key, decode(request, "range_end"))
+          : kvs.subMap(key, true, key, true);
+      entries.forEach((k, kv) -> array.add(kv(k, kv, values)));
+      return array;
+    }
+
+    private JsonObject kv(String key, Kv kv, boolean values) {
+      var json = new JsonObject();
+      json.addProperty("key", encode(key));
+      if (values) {
+        json.addProperty("value", encode(kv.value));
+      }
+      json.addProperty("create_revision", Long.toString(kv.create));
+      json.addProperty("mod_revision", Long.toString(kv.mod));
+      if (kv.lease != 0) {
+        json.addProperty("lease", Long.toString(kv.lease));
+      }
+      return json;
+    }
+
+    private static String decode(JsonObject json, String name) {
+      return new String(Base64.getDecoder().decode(json.get(name).getAsString()), StandardCharsets.UTF_8);
+    }
+
+    private static String encode(String s) {
+      return Base64.getEncoder().encodeToString(s.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+}
@@ -0,0 +1,41 @@
+package x1.service.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import x1.service.registry.HeartbeatSchedule;
+
+@DisplayName("HeartbeatSchedule Test")
+public class HeartbeatScheduleTest {
+
+  @Test
+  public void testJitter() {
+    var schedule = new HeartbeatSchedule(1000, 3, 400, 0.1);
+    for (var i = 0; i < 100; i++) {
+      assertThat(schedule.getInitialDelay()).isBetween(0L, 999L);
+      assertThat(schedule.next(true, 0)).isBetween(900L, 1100L);
+    }
+  }
+
+  @Test
+  public void testBackoffOnLatency() {
+    var schedule = new HeartbeatSchedule(1000, 3, 400, 0);
+    assertThat(schedule.next(true, 50)).isEqualTo(1000);
+    // slower than a quarter of the timeout, at most one interval before the ttl expires
+    assertThat(schedule.next(true, 200)).isEqualTo(2000);
+    assertThat(schedule.next(true, 200)).isEqualTo(2000);
+    assertThat(schedule.next(true, 50)).isEqualTo(1000);
+  }
+
+  @Test
+  public void testRetryAfterFailure() {
+    var schedule = new HeartbeatSchedule(1000, 3, 400, 0);
+    assertThat(schedule.next(false, 50)).isEqualTo(100);
+    assertThat(schedule.next(false, 50)).isEqualTo(100);
+    assertThat(schedule.getBackoff()).isEqualTo(1);
+    assertThat(schedule.next(true, 50)).isEqualTo(1000);
+  }
+
+}
@@ -0,0 +1,153 @@
+package x1.service.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static x1.service.test.Nodes.DIRECTORY;
+import static x1.service.test.Nodes.dir;
+import static x1.service.test.Nodes.event;
+import static x1.service.test.Nodes.node;
+
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import x1.service.client.LoadBalancer;
+import x1.service.client.Strategy;
+import x1.service.etcd.Node;
+
+@DisplayName("LoadBalancer Test")
+public class LoadBalancerTest {
+  private static final List<Node> NODES = List.of(node(DIRECTORY + "/host1"), node(DIRECTORY + "/host2"),
+      node(DIRECTORY + "/host3"));
+
+  @Test
+  public void testRoundRobin() {
+    var balancer = new LoadBalancer(Strategy.ROUND_ROBIN);
+    var keys = new StringBuilder();
+    for (var i = 0; i < 4; i++) {
+      try (var selection = balancer.choose(DIRECTORY, NODES)) {
+        keys.append(selection.getNode().getKey().substring(DIRECTORY.length() + 1)).append(' ');
+      }
+    }
+    assertThat(keys.toString()).isEqualTo("host1 host2 host3 host1 ");
+    assertThat(balancer.choose(DIRECTORY, List.of())).isNull();
+  }
+
+  @Test
+  public void testPowerOfTwoChoicesAvoidsBusyInstances() {
+    var balancer = new LoadBalancer(Strategy.POWER_OF_TWO_CHOICES);
+    // host1 and host2 are busy
+    for (var i = 0; i < 5; i++) {
+      balancer.choose(NODES.get(0).getKey(), List.of(NODES.get(0)));
+      balancer.choose(NODES.get(1).getKey(), List.of(NODES.get(1)));
+    }
+    var counts = new HashMap<String, Integer>();
+    for (var i = 0; i < 300; i++) {
+      try (var selection = balancer.choose(DIRECTORY, NODES)) {
+        counts.merge(selection.getNode().getKey(), 1, Integer::sum);
+      }
+    }
+    // host3 wins whenever it is one of the two choices, i.e. in 2 of 3 cases
+    assertThat(counts.get(NODES.get(2).getKey())).isGreaterThan(150);
+    assertThat(balancer.instance(NODES.get(0).getKey()).getInFlight()).isEqualTo(5);
+  }
+
+  @Test
+  public void testEwmaPrefersFastInstances() {
+    var balancer = new LoadBalancer(Strategy.EWMA);
+    for (var node : NODES) {
+      balancer.choose(node.getKey(), List.of(node)).complete(node == NODES.get(0) ? 1_000_000 : 100_000_000);
+    }
+    var counts = new HashMap<String, Integer>();
+    for (var i = 0; i < 300; i++) {
+      var selection = balancer.choose(DIRECTORY, NODES);
+      counts.merge(selection.getNode().getKey(), 1, Integer::sum);
+      selection.complete(-1);
+    }
+    assertThat(counts.get(NODES.get(0).getKey())).isGreaterThan(250);
+    assertThat(balancer.instance(NODES.get(0).getKey()).getInFlight()).isZero();
+  }
+
+  @Test
+  public void testEjectAfterConsecutiveFailures() {
+    var balancer = new LoadBalancer(Strategy.ROUND_ROBIN);
+    assertThat(balancer.filter(NODES)).isSameAs(NODES);
+    var host1 = NODES.get(0).getKey();
+    for (var i = 0; i < 4; i++) {
+      balancer.report(host1, false);
+    }
+    balancer.report(host1, true);
+    balancer.report(host1, false);
+    assertThat(balancer.filter(NODES)).isSameAs(NODES);
+    for (var i = 0; i < 4; i++) {
+      balancer.report(host1, false);
+    }
+    assertThat(balancer.instance(host1).getEjections()).isEqualTo(1);
+    assertThat(balancer.filter(NODES)).extracting("key").doesNotContain(host1).hasSize(2);
+    for (var i = 0; i < 6; i++) {
+      try (var selection = balancer.choose(DIRECTORY, NODES)) {
+        assertThat(selection.getNode().getKey()).isNotEqualTo(host1);
+      }
+    }
+    // never eject all instances
+    assertThat(balancer.filter(List.of(NODES.get(0)))).hasSize(1);
+  }
+
+  @Test
+  public void testEjectOnErrorRate() {
+    var balancer = new LoadBalancer(Strategy.ROUND_ROBIN);
+    var host2 = NODES.get(1).getKey();
+    // 50% of 21 calls
+    for (var i = 0; i < 21; i++) {
+      try (var selection = balancer.choose(DIRECTORY, List.of(NODES.get(1)))) {
+        if (i % 2 == 0) {
+          selection.fail();
+        }
+      }
+    }
+    assertThat(balancer.instance(host2).getEjections()).isEqualTo(1);
+  }
+
+  @Test
+  public void testForgetDeletedInstances() {
+    var balancer = new LoadBalancer(Strategy.ROUND_ROBIN);
+    var host1 = NODES.get(0).getKey();
+    var host2 = NODES.get(1).getKey();
+    var host3 = NODES.get(2).getKey();
+    for (var i = 0; i < 5; i++) {
+      balancer.report(host1, false);
+      balancer.report(host2, false);
+      balancer.report(host3, false);
+    }
+    balancer.onEvent(event("set", node(host1)));
+    assertThat(balancer.instance(host1).getEjections()).isEqualTo(1);
+    balancer.onEvent(event("expire", node(host1)));
+    assertThat(balancer.instance(host1).getEjections()).isZero();
+    // host3 is gone after a resync, the directory of host2 is deleted
+    balancer.onResync(event("get", dir(DIRECTORY, node(host1), node(host2))));
+    assertThat(balancer.instance(host2).getEjections()).isEqualTo(1);
+    assertThat(balancer.instance(host3).getEjections()).isZero();
+    balancer.onEvent(event("delete", dir(DIRECTORY)));
+    assertThat(balancer.instance(host2).getEjections()).isZero();
+  }
+
+  @Test
+  public void testForgetRemovedInstances() {
+    var balancer = new LoadBalancer(Strategy.ROUND_ROBIN);
+    var host1 = NODES.get(0).getKey();
+    for (var i = 0; i < 5; i++) {
+      balancer.choose(DIRECTORY, NODES).fail();
+    }
+    assertThat(balancer.instance(host1).getErrorRate(0)).isEqualTo(100);
+    // the same nodes keep the statistics, host1 is gone without a watch event
+    balancer.filter(DIRECTORY, NODES);
+    assertThat(balancer.instance(host1).getErrorRate(0)).isEqualTo(100);
+    balancer.choose(DIRECTORY, NODES.subList(1, 3)).complete(-1);
+    assertThat(balancer.instance(host1).getErrorRate(0)).isZero();
+    assertThat(balancer.instance(NODES.get(1).getKey()).getErrorRate(0)).isEqualTo(100);
+    // an empty directory drops all of them
+    assertThat(balancer.choose(DIRECTORY, List.of())).isNull();
+    assertThat(balancer.instance(NODES.get(1).getKey()).getErrorRate(0)).isZero();
+  }
+}
@@ -0,0 +1,48 @@
+package x1.service.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import x1.service.etcd.Node;
+import x1.service.etcd.Result;
+
+/**
+ * Builds the etcd nodes and events of the tests
+ */
+final class Nodes {
+  static final String DIRECTORY = "/x1/rest/x1.service.test.ShareResource/1.0/https/local";
+
+  private Nodes() {
+  }
+
+  static Node node(String key) {
+    return node(key, 0, null);
+  }
+
+  static Node node(String key, String value) {
+    return node(key, 0, value);
+  }
+
+  static Node node(String key, long modifiedIndex, String value) {
+    var node = new Node();
+    node.setKey(key);
+    node.setModifiedIndex(modifiedIndex);
+    node.setValue(value);
+    return node;
+  }
+
+  static Node dir(String key, Node... nodes) {
+    var node = new Node();
+    node.setKey(key);
+    node.setDir(true);
+    node.setNodes(new ArrayList<>(List.of(nodes)));
+    return node;
+  }
+
+  static Result event(String action, Node node) {
+    var result = new Result();
+    result.setAction(action);
+    result.setNode(node);
+    return result;
+  }
+}
@@ -0,0 +1,65 @@
+package x1.service.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static x1.service.test.Nodes.DIRECTORY;
+
+import java.net.InetAddress;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import x1.service.registry.Registration;
+import x1.service.registry.RegistrationPlan;
+
+@DisplayName("RegistrationPlan Test")
+public class RegistrationPlanTest {
+  private final AtomicInteger builds = new AtomicInteger();
+  private final AtomicReference<Set<InetAddress>> addresses = new AtomicReference<>();
+  private RegistrationPlan plan;
+
+  @BeforeEach
+  public void setup() throws Exception {
+    addresses.set(Set.of(InetAddress.getByName("10.0.0.1")));
+    plan = new RegistrationPlan(() -> List
+        .of(new Registration(DIRECTORY, DIRECTORY + "/host" + builds.incrementAndGet(), "hostName=host\n", 300)),
+        addresses::get);
+  }
+
+  @Test
+  public void testReplay() {
+    var registrations = plan.getRegistrations();
+    assertThat(registrations).extracting(Registration::file).containsExactly(DIRECTORY + "/host1");
+    assertThat(plan.getRegistrations()).isSameAs(registrations);
+    assertThat(plan.getLastRegistrations()).isSameAs(registrations);
+    assertThat(builds).hasValue(1);
+  }
+
+  @Test
+  public void testRebuildAfterBindingChange() {
+    plan.getRegistrations();
+    plan.invalidate();
+    // the registrations to remove are the ones built last
+    assertThat(plan.getLastRegistrations()).extracting(Registration::file).containsExactly(DIRECTORY + "/host1");
+    assertThat(plan.getRegistrations()).extracting(Registration::file).containsExactly(DIRECTORY + "/host2");
+    assertThat(plan.getRegistrations()).extracting(Registration::file).containsExactly(DIRECTORY + "/host2");
+    assertThat(builds).hasValue(2);
+  }
+
+  @Test
+  public void testRebuildAfterAddressChange() throws Exception {
+    plan.getRegistrations();
+    // unknown addresses keep the registrations
+    addresses.set(null);
+    plan.getRegistrations();
+    assertThat(builds).hasValue(1);
+    addresses.set(Set.of(InetAddress.getByName("10.0.0.2")));
+    assertThat(plan.getRegistrations()).extracting(Registration::file).containsExactly(DIRECTORY + "/host2");
+    assertThat(builds).hasValue(2);
+  }
+
+}
@@ -0,0 +1,322 @@
+package x1.service.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import x1.service.etcd.ClientConfig;
+import x1.service.etcd.EtcdClient;
+import x1.service.registry.Registration;
+import x1.service.registry.RegistrationWriter;
+
+@DisplayName("RegistrationWriter Test")
+public class RegistrationWriterTest {
+  private static final String PREFIX = "/x1/rest/x1.service.test.ShareResource/1.0/https/";
+  private static final List<Registration> REGISTRATIONS = List.of(registration("local", "host1"),
+      registration("local", "host2"), registration("test", "host1"));
+
+  private HttpServer server;
+  private ExecutorService executor;
+  private final StandIn standIn = new StandIn();
+  private EtcdClient etcd;
+
+  @BeforeEach
+  public void setup() throws IOException {
+    executor = Executors.newCachedThreadPool();
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.setExecutor(executor);
+    server.createContext("/", standIn::handle);
+    server.start();
+    var config = new ClientConfig();
+    config.setWriteTimeout(5000);
+    etcd = new EtcdClient(List.of(URI.create("http://127.0.0.1:" + server.getAddress().getPort())), config);
+  }
+
+  @AfterEach
+  public void tearDown() throws IOException {
+    etcd.close();
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testRegister() throws Exception {
+    var writer = new RegistrationWriter(etcd, 2, false, () -> false);
+    var outcomes = writer.register(REGISTRATIONS, System.currentTimeMillis() + 5000);
+    assertThat(outcomes.keySet()).containsExactly(PREFIX + "local/host1", PREFIX + "local/host2",
+        PREFIX + "test/host1");
+    assertThat(outcomes.values()).allMatch(o -> o.isSuccess());
+    assertThat(standIn.values()).containsEntry(PREFIX + "local/host2", "hostName=host2\n").hasSize(3);
+    // without heartbeat each cycle writes all keys again
+    writer.register(REGISTRATIONS, System.currentTimeMillis() + 5000);
+    assertThat(standIn.sets).hasValue(6);
+    assertThat(standIn.refreshes).hasValue(0);
+  }
+
+  @Test
+  public void testOutcomePerKey() throws Exception {
+    // a directory in place of the key
+    standIn.put(PREFIX + "local/host2", null);
+    var writer = new RegistrationWriter(etcd, 2, false, () -> false);
+    var outcomes = writer.register(REGISTRATIONS, System.currentTimeMillis() + 5000);
+    assertThat(outcomes.get(PREFIX + "local/host1").isSuccess()).isTrue();
+    assertThat(outcomes.get(PREFIX + "local/host2").isSuccess()).isFalse();
+    assertThat(outcomes.get(PREFIX + "test/host1").isSuccess()).isTrue();
+    // the directory is not repaired
+    assertThat(standIn.deletes).hasValue(0);
+  }
+
+  @Test
+  public void testDeadline() throws Exception {
+    standIn.delay = 2000;
+    var writer = new RegistrationWriter(etcd, 1, false, () -> false);
+    var start = System.currentTimeMillis();
+    var outcomes = writer.register(REGISTRATIONS, start + 300);
+    assertThat(System.currentTimeMillis() - start).isLessThan(1500);
+    assertThat(outcomes).hasSize(3);
+    assertThat(outcomes.values()).noneMatch(o -> o.isSuccess());
+  }
+
+  @Test
+  public void testStopped() throws Exception {
+    var writer = new RegistrationWriter(etcd, 2, false, () -> true);
+    assertThat(writer.register(REGISTRATIONS, System.currentTimeMillis() + 5000)).isEmpty();
+    assertThat(standIn.sets).hasValue(0);
+  }
+
+  @Test
+  public void testDefaultConfiguration() throws Exception {
+    var writer = new RegistrationWriter(etcd, 16, Boolean.parseBoolean(RegistrationWriter.DEFAULT_HEARTBEAT),
+        () -> false);
+    for (var i = 0; i < 3; i++) {
+      var outcomes = writer.register(REGISTRATIONS, System.currentTimeMillis() + 5000);
+      assertThat(outcomes.values()).allMatch(o -> o.isSuccess());
+    }
+    // only the first cycle writes the values
+    assertThat(standIn.sets).hasValue(3);
+    assertThat(standIn.refreshes).hasValue(6);
+  }
+
+  @Test
+  public void testRefreshUnchanged() throws Exception {
+    var writer = new RegistrationWriter(etcd, 2, true, () -> false);
+    writer.register(REGISTRATIONS, System.currentTimeMillis() + 5000);
+    var outcomes = writer.register(REGISTRATIONS, System.currentTimeMillis() + 5000);
+    assertThat(outcomes).hasSize(3);
+    assertThat(outcomes.values()).allMatch(o -> o.isSuccess() && "refresh".equals(o.getOperation().getName()));
+    assertThat(standIn.sets).hasValue(3);
+    assertThat(standIn.refreshes).hasValue(3);
+    // the next refresh is conditional on the modifiedIndex of the refresh
+    writer.register(REGISTRATIONS, System.currentTimeMillis() + 5000);
+    assertThat(standIn.sets).hasValue(3);
+    assertThat(standIn.refreshes).hasValue(6);
+  }
+
+  @Test
+  public void testRewriteModified() throws Exception {
+    var writer = new RegistrationWriter(etcd, 2, true, () -> false);
+    writer.register(REGISTRATIONS, System.currentTimeMillis() + 5000);
+    // modified by someone else, expired and a changed value
+    standIn.put(PREFIX + "local/host1", "hostName=other\n");
+    standIn.entries.remove(PREFIX + "local/host2");
+    var changed = List.of(REGISTRATIONS.get(0), REGISTRATIONS.get(1),
+        new Registration(PREFIX + "test", PREFIX + "test/host1", "hostName=host3\n", 300));
+    var outcomes = writer.register(changed, System.currentTimeMillis() + 5000);
+    assertThat(outcomes.values()).allMatch(o -> o.isSuccess() && "set".equals(o.getOperation().getName()));
+    assertThat(standIn.refreshes).hasValue(2);
+    assertThat(standIn.values()).containsEntry(PREFIX + "local/host1", "hostName=host1\n")
+        .containsEntry(PREFIX + "local/host2", "hostName=host2\n")
+        .containsEntry(PREFIX + "test/host1", "hostName=host3\n");
+  }
+
+  @Test
+  public void testReplaceFileByDirectory() throws Exception {
+    standIn.put(PREFIX + "local", "a file");
+    var writer = new RegistrationWriter(etcd, 2, false, () -> false);
+    var outcomes = writer.register(REGISTRATIONS, System.currentTimeMillis() + 5000);
+    assertThat(outcomes.values()).allMatch(o -> o.isSuccess());
+    assertThat(standIn.deletes).hasValue(1);
+    assertThat(standIn.values()).doesNotContainKey(PREFIX + "local").hasSize(3);
+  }
+
+  @Test
+  public void testDeregister() throws Exception {
+    var writer = new RegistrationWriter(etcd, 2, false, () -> false);
+    writer.register(REGISTRATIONS, System.currentTimeMillis() + 5000);
+    var outcomes = writer.deregister(REGISTRATIONS, 5000);
+    assertThat(outcomes).hasSize(3);
+    assertThat(outcomes.values()).allMatch(o -> o.isSuccess());
+    assertThat(standIn.values()).isEmpty();
+  }
+
+  private static Registration registration(String stage, String host) {
+    return new Registration(PREFIX + stage, PREFIX + stage + "/" + host, "hostName=" + host + "\n", 300);
+  }
+
+  /**
+   * A minimal in-memory stand-in for the keys API of etcd v2: sets, refreshes, directories and deletes
+   */
+  private static class StandIn {
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong index = new AtomicLong(1);
+    private final AtomicInteger sets = new AtomicInteger();
+    private final AtomicInteger refreshes = new AtomicInteger();
+    private final AtomicInteger deletes = new AtomicInteger();
+    private volatile long delay;
+
+    /**
+     * A value or a directory (null), with its modifiedIndex
+     */
+    private record Entry(String value, long modifiedIndex) {
+    }
+
+    void put(String key, String value) {
+      entries.put(key, new Entry(value, index.incrementAndGet()));
+    }
+
+    Map<String, String> values() {
+      var values = new HashMap<String, String>();
+      entries.forEach((key, entry) -> {
+        if (entry.value() != null) {
+          values.put(key, entry.value());
+        }
+      });
+      return values;
+    }
+
+    void handle(HttpExchange exchange) throws IOException {
+      if (delay > 0) {
+        try {
+          Thread.sleep(delay);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      var key = exchange.getRequestURI().getPath().substring("/v2/keys".length());
+      var form = form(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+      synchronized (this) {
+        switch (exchange.getRequestMethod()) {
+        case "PUT":
+          put(exchange, key, form);
+          break;
+        case "DELETE":
+          deletes.incrementAndGet();
+          var deleted = entries.remove(key);
+          if (deleted == null) {
+            error(exchange, 404, 100, "Key not found", key);
+          } else {
+            respond(exchange, 200, "delete", key, deleted);
+          }
+          break;
+        default:
+          exchange.sendResponseHeaders(405, -1);
+          exchange.close();
+        }
+      }
+    }
+
+    private void put(HttpExchange exchange, String key, Map<String, String> form) throws IOException {
+      for (var i = key.indexOf('/', 1); i > 0; i = key.indexOf('/', i + 1)) {
+        var parent = entries.get(key.substring(0, i));
+        if (parent != null && parent.value() != null) {
+          error(exchange, 400, 104, "Not a directory", key.substring(0, i));
+          return;
+        }
+      }
+      var current = entries.get(key);
+      if ("true".equals(form.get("refresh"))) {
+        refreshes.incrementAndGet();
+        if (current == null) {
+          error(exchange, 404, 100, "Key not found", key);
+        } else if (current.modifiedIndex() != Long.parseLong(form.get("prevIndex"))) {
+          error(exchange, 412, 101, "Compare failed", key);
+        } else {
+          put(key, current.value());
+          respond(exchange, 200, "update", key, entries.get(key));
+        }
+        return;
+      }
+      if (current != null && current.value() == null) {
+        error(exchange, 403, 102, "Not a file", key);
+        return;
+      }
+      if ("true".equals(form.get("dir"))) {
+        put(key, null);
+      } else {
+        sets.incrementAndGet();
+        put(key, form.get("value"));
+      }
+      respond(exchange, current == null ? 201 : 200, "set", key, entries.get(key));
+    }
+
+    private void respond(HttpExchange exchange, int status, String action, String key, Entry entry)
+        throws IOException {
+      var node = new JsonObject();
+      node.addProperty("key", key);
+      if (entry.value() != null) {
+        node.addProperty("value", entry.value());
+      } else {
+        node.addProperty("dir", true);
+      }
+      node.addProperty("modifiedIndex", entry.modifiedIndex());
+      node.addProperty("createdIndex", entry.modifiedIndex());
+      var json = new JsonObject();
+      json.addProperty("action", action);
+      json.add("node", node);
+      send(exchange, status, json);
+    }
+
+    private void error(HttpExchange exchange, int status, int errorCode, String message, String cause)
+        throws IOException {
+      var json = new JsonObject();
+      json.addProperty("errorCode", errorCode);
+      json.addProperty("message", message);
+      json.addProperty("cause", cause);
+      json.addProperty("index", index.get());
+      send(exchange, status, json);
+    }
+
+    private void send(HttpExchange exchange, int status, JsonObject json) throws IOException {
+      var body = json.toString().getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().add("Content-Type", "application/json");
+      exchange.getResponseHeaders().add("X-Etcd-Index", Long.toString(index.get()));
+      exchange.sendResponseHeaders(status, body.length);
+      try (var out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    }
+
+    private static Map<String, String> form(String body) {
+      var form = new HashMap<String, String>();
+      for (var pair : body.split("&")) {
+        var i = pair.indexOf('=');
+        if (i > 0) {
+          form.put(pair.substring(0, i), URLDecoder.decode(pair.substring(i + 1), StandardCharsets.UTF_8));
+        }
+      }
+      return form;
+    }
+  }
+
+}
@@ -0,0 +1,82 @@
+package x1.service.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static x1.service.registry.Protocol.EJB;
+import static x1.service.registry.Protocol.HTTPS;
+import static x1.service.registry.Technology.JMS;
+import static x1.service.registry.Technology.REST;
+import static x1.service.test.Nodes.dir;
+import static x1.service.test.Nodes.event;
+
+import java.util.Set;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import x1.service.client.RegistryIndex;
+import x1.service.client.ServiceKey;
+import x1.service.etcd.Node;
+import x1.service.etcd.Result;
+
+@DisplayName("RegistryIndex Test")
+public class RegistryIndexTest {
+  private static final ServiceKey SHARES = ServiceKey.of(REST, "x1.service.test.ShareResource", "1.0", "local",
+      HTTPS);
+  private static final ServiceKey LISTENER = ServiceKey.of(JMS, "x1.service.test.ShareMessageListener", "1.0",
+      "local", EJB);
+
+  @Test
+  public void testBuildFromSnapshot() throws Exception {
+    var index = new RegistryIndex("/x1", Set.of(), true);
+    assertThat(index.isReady()).isFalse();
+    assertThat(index.awaitReady(10).get()).isFalse();
+    index.onResync(snapshot());
+    assertThat(index.isReady()).isTrue();
+    assertThat(index.size()).isEqualTo(2);
+    assertThat(index.get(SHARES)).extracting("value").containsExactly("host1", "host2");
+    assertThat(index.get(LISTENER)).extracting("value").containsExactly("host1");
+    assertThat(index.get(ServiceKey.of(REST, "x1.service.test.Other", "1.0", "local", HTTPS))).isEmpty();
+  }
+
+  @Test
+  public void testTechnologyFilter() {
+    var index = new RegistryIndex("/x1", Set.of("jms"), true);
+    index.onResync(snapshot());
+    assertThat(index.get(SHARES)).isEmpty();
+    assertThat(index.get(LISTENER)).hasSize(1);
+  }
+
+  @Test
+  public void testIncrementalUpdates() {
+    var index = new RegistryIndex("/x1", Set.of(), true);
+    index.onResync(snapshot());
+    index.onEvent(event("set", node(SHARES, "host1", "changed")));
+    index.onEvent(event("create", node(SHARES, "host3", "host3")));
+    assertThat(index.get(SHARES)).extracting("value").containsExactly("changed", "host2", "host3");
+    index.onEvent(event("expire", node(SHARES, "host2", null)));
+    assertThat(index.get(SHARES)).extracting("value").containsExactly("changed", "host3");
+    index.onEvent(event("delete", dir("/x1/rest")));
+    assertThat(index.get(SHARES)).isEmpty();
+    assertThat(index.get(LISTENER)).hasSize(1);
+  }
+
+  private static Result snapshot() {
+    var root = dir("/x1");
+    var shares = dir(SHARES.toDirectory("/x1"));
+    shares.getNodes().add(node(SHARES, "host1", "host1"));
+    shares.getNodes().add(node(SHARES, "host2", "host2"));
+    var listener = dir(LISTENER.toDirectory("/x1"));
+    listener.getNodes().add(node(LISTENER, "host1", "host1"));
+    // the intermediate levels are omitted, the index only looks at the keys of the leaves
+    root.getNodes().add(shares);
+    root.getNodes().add(listener);
+    var result = new Result();
+    result.setAction("get");
+    result.setNode(root);
+    return result;
+  }
+
+  private static Node node(ServiceKey service, String host, String value) {
+    return Nodes.node(service.toDirectory("/x1") + "/" + host, value);
+  }
+}
@@ -0,0 +1,66 @@
+package x1.service.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static x1.service.test.Nodes.DIRECTORY;
+import static x1.service.test.Nodes.node;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import x1.service.client.DirectoryCache;
+import x1.service.client.RegistrySnapshot;
+
+@DisplayName("RegistrySnapshot Test")
+public class RegistrySnapshotTest {
+  @TempDir
+  Path dir;
+
+  @Test
+  public void testWriteAndRead() throws Exception {
+    var file = dir.resolve("registry.snapshot");
+    new RegistrySnapshot("/x1", 42, Map.of(DIRECTORY, List.of(node(DIRECTORY + "/host1", 7, "hostName=höst1\n"))))
+        .write(file);
+    var snapshot = RegistrySnapshot.read(file);
+    assertThat(snapshot.getPrefix()).isEqualTo("/x1");
+    assertThat(snapshot.getCreatedAt()).isEqualTo(42);
+    var nodes = snapshot.getDirectories().get(DIRECTORY);
+    assertThat(nodes).extracting("key").containsExactly(DIRECTORY + "/host1");
+    assertThat(nodes.get(0).getValue()).isEqualTo("hostName=höst1\n");
+    assertThat(nodes.get(0).getModifiedIndex()).isEqualTo(7);
+    try (var files = Files.list(dir)) {
+      assertThat(files).containsExactly(file);
+    }
+  }
+
+  @Test
+  public void testCorruptFile() throws Exception {
+    var file = dir.resolve("registry.snapshot");
+    new RegistrySnapshot("/x1", 42, Map.of(DIRECTORY, List.of(node(DIRECTORY + "/host1", 7, "hostName=host1\n"))))
+        .write(file);
+    var bytes = Files.readAllBytes(file);
+    Files.write(file, Arrays.copyOf(bytes, bytes.length - 4));
+    assertThatThrownBy(() -> RegistrySnapshot.read(file)).isInstanceOf(IOException.class);
+  }
+
+  @Test
+  public void testStaleUntilRead() {
+    var cache = new DirectoryCache(10, 60000);
+    cache.seed(Map.of(DIRECTORY, List.of(node(DIRECTORY + "/host1", 7, "hostName=host1\n"))));
+    assertThat(cache.get(DIRECTORY)).isNull();
+    assertThat(cache.isStale(DIRECTORY)).isTrue();
+    assertThat(cache.getStale(DIRECTORY)).extracting("key").containsExactly(DIRECTORY + "/host1");
+    assertThat(cache.view()).containsKey(DIRECTORY);
+    cache.put(DIRECTORY, List.of(), cache.getGeneration(DIRECTORY));
+    assertThat(cache.isStale(DIRECTORY)).isFalse();
+    assertThat(cache.view().get(DIRECTORY)).isEmpty();
+  }
+}
@@ -12,12 +12,17 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 
 import x1.service.Constants;
+import x1.service.client.LiveEndpoints;
+import x1.service.client.ResolvedService;
 import x1.service.client.Resolver;
+import x1.service.etcd.EtcdClient;
 import x1.service.etcd.Node;
+import x1.service.registry.ServiceIndexProcessor;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.List;
+import java.util.function.BooleanSupplier;
 
 import jakarta.inject.Inject;
 import jakarta.ws.rs.core.UriBuilder;
@@ -40,6 +45,13 @@ public class ResolverTest {
   @Inject
   private Resolver resolver;
 
+  @Inject
+  private EtcdClient etcd;
+
+  @Inject
+  @ResolvedService(technology = REST, value = "x1.service.test.ShareResource", version = "1.x", protocol = HTTPS)
+  private LiveEndpoints shares;
+
   @Deployment
   public static Archive<?> createTestArchive() {
     var libraries = Maven.resolver().loadPomFromFile("pom.xml")
@@ -48,7 +60,8 @@ public class ResolverTest {
 
     return ShrinkWrap.create(WebArchive.class, APP_NAME_MAJOR_MINOR + ".war").addPackages(true, "x1.service")
         .addAsResource("microprofile-config.properties", "META-INF/microprofile-config.properties")
-        .addAsResource("service-registry.properties").addAsWebInfResource("beans.xml")
+        .addAsResource("service-registry.properties").addAsResource(ServiceIndexProcessor.INDEX)
+        .addAsWebInfResource("beans.xml")
         .addAsWebInfResource("jboss-deployment-structure.xml").addAsLibraries(libraries);
   }
 
@@ -91,6 +104,29 @@ public class ResolverTest {
         .containsEntry(JNDI_NAME, "java:/jms/queue/test").size().isEqualTo(5);
   }
 
+  @Test
+  public void testLiveEndpoints() throws Exception {
+    await(() -> shares.get().stream().anyMatch(e -> hostname.equals(e.hostName())));
+    var key = "/x1/rest/" + ShareResource.class.getName() + "/" + APP_VERSION_MAJOR_MINOR + "/https/" + STAGE
+        + "/other-host";
+    etcd.set(key, HOST_NAME + "=other-host\n" + PORT + "=8443\n" + PROTOCOL + "=https\n" + BASE_URI
+        + "=https://other-host:8443/" + APP_NAME_MAJOR_MINOR + "/shares\n", 60);
+    try {
+      await(() -> shares.get().stream().anyMatch(e -> "other-host".equals(e.hostName())));
+    } finally {
+      etcd.delete(key);
+    }
+    await(() -> shares.get().stream().noneMatch(e -> "other-host".equals(e.hostName())));
+    assertThat(shares.get()).anyMatch(e -> hostname.equals(e.hostName()));
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    for (var i = 0; i < 100 && !condition.getAsBoolean(); i++) {
+      Thread.sleep(100);
+    }
+    assertThat(condition.getAsBoolean()).isTrue();
+  }
+
   private Node getNode(List<Node> nodes, Resolver resolver) {
     for (Node node : nodes) {
       var props = resolver.getProperties(node);
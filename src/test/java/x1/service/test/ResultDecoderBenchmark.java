@@ -0,0 +1,85 @@
+package x1.service.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Callable;
+
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.util.EntityUtils;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.Gson;
+
+import x1.service.etcd.Projection;
+import x1.service.etcd.Result;
+import x1.service.etcd.ResultDecoder;
+
+/**
+ * Compares the decoding of a listing of 5000 nodes (about 1.2 MB) as a String with reflective Gson, as before the
+ * {@link ResultDecoder}, with the decoder and its projections. Each variant decodes the same buffered body, as the
+ * async client hands it over, on one thread after a warm-up. Not run by the build, start it with
+ * <code>mvn test -Dtest=ResultDecoderBenchmark</code>.
+ */
+@DisplayName("ResultDecoder Benchmark")
+public class ResultDecoderBenchmark {
+  private static final int NODES = 5000;
+  private static final int WARMUP = 200;
+  private static final int ITERATIONS = 200;
+
+  private final Gson gson = new Gson();
+  private final ResultDecoder decoder = new ResultDecoder();
+
+  @Test
+  public void testDecode() throws Exception {
+    var body = listing().getBytes(StandardCharsets.UTF_8);
+    System.out.printf("listing of %d nodes, %d KB%n", NODES, body.length / 1024);
+    var string = measure("String + Gson", () -> gson
+        .fromJson(EntityUtils.toString(new ByteArrayEntity(body, ContentType.APPLICATION_JSON)), Result.class));
+    var full = measure("stream, FULL", () -> decoder.decode(new ByteArrayInputStream(body), Projection.FULL));
+    var keys = measure("stream, KEYS_ONLY",
+        () -> decoder.decode(new ByteArrayInputStream(body), Projection.KEYS_ONLY));
+    assertThat(full).isLessThan(string);
+    assertThat(keys).isLessThan(full);
+  }
+
+  /**
+   * @return the allocated bytes per operation
+   */
+  private long measure(String name, Callable<Result> decode) throws Exception {
+    var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    var thread = Thread.currentThread().threadId();
+    for (var i = 0; i < WARMUP; i++) {
+      assertThat(decode.call().getNode().getNodes()).hasSize(NODES);
+    }
+    var allocated = threads.getThreadAllocatedBytes(thread);
+    var start = System.nanoTime();
+    for (var i = 0; i < ITERATIONS; i++) {
+      decode.call();
+    }
+    var nanos = (System.nanoTime() - start) / ITERATIONS;
+    var bytes = (threads.getThreadAllocatedBytes(thread) - allocated) / ITERATIONS;
+    System.out.printf("%-20s %6.2f ms/op %8d KB allocated/op%n", name, nanos / 1e6, bytes / 1024);
+    return bytes;
+  }
+
+  private static String listing() {
+    var json = new StringBuilder("{\"action\":\"get\",\"node\":{\"key\":\"/x1/rest\",\"dir\":true,\"nodes\":[");
+    for (var i = 0; i < NODES; i++) {
+      if (i > 0) {
+        json.append(',');
+      }
+      var key = "/x1/rest/x1.service.test.ShareResource/1.0/https/local/host" + i;
+      json.append("{\"key\":\"").append(key).append("\",\"value\":\"hostName=host").append(i)
+          .append(".example.com\\nport=8443\\nprotocol=https\\ncontext=/share\\nrest=https://host").append(i)
+          .append(".example.com:8443/share/rest\\n\",\"expiration\":\"2026-01-01T00:00:00.000000000Z\",")
+          .append("\"ttl\":300,\"modifiedIndex\":").append(1000 + i).append(",\"createdIndex\":").append(1000 + i)
+          .append('}');
+    }
+    return json.append("],\"modifiedIndex\":3,\"createdIndex\":3}}").toString();
+  }
+}
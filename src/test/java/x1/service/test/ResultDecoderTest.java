@@ -0,0 +1,78 @@
+package x1.service.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import x1.service.etcd.Projection;
+import x1.service.etcd.ResultDecoder;
+
+@DisplayName("ResultDecoder Test")
+public class ResultDecoderTest {
+  private static final String LISTING = "{\"action\":\"get\",\"node\":{\"key\":\"/x1/rest\",\"dir\":true,"
+      + "\"nodes\":[{\"key\":\"/x1/rest/a\",\"value\":\"hostName=a\\nport=8080\\n\",\"expiration\":\"2016-01-01T00:00:00Z\","
+      + "\"ttl\":300,\"modifiedIndex\":12,\"createdIndex\":10},{\"key\":\"/x1/rest/b\",\"dir\":true,"
+      + "\"nodes\":[{\"key\":\"/x1/rest/b/c\",\"value\":\"x\",\"modifiedIndex\":13,\"createdIndex\":13}],"
+      + "\"modifiedIndex\":11,\"createdIndex\":11}],\"modifiedIndex\":3,\"createdIndex\":3},"
+      + "\"prevNode\":{\"key\":\"/x1/rest\",\"value\":\"old\"},\"unknown\":[1,2,{\"a\":null}]}";
+
+  private final ResultDecoder decoder = new ResultDecoder();
+
+  @Test
+  public void testDecodeListing() throws IOException {
+    var result = decoder.decode(stream(LISTING), Projection.FULL);
+    assertThat(result.isError()).isFalse();
+    assertThat(result.getAction()).isEqualTo("get");
+    assertThat(result.getPrevNode().getValue()).isEqualTo("old");
+    var node = result.getNode();
+    assertThat(node.isDir()).isTrue();
+    assertThat(node.getModifiedIndex()).isEqualTo(3);
+    assertThat(node.getNodes()).hasSize(2);
+    var first = node.getNodes().get(0);
+    assertThat(first.getKey()).isEqualTo("/x1/rest/a");
+    assertThat(first.getValue()).isEqualTo("hostName=a\nport=8080\n");
+    assertThat(first.getTtl()).isEqualTo(300);
+    assertThat(first.getExpiration()).isEqualTo("2016-01-01T00:00:00Z");
+    assertThat(first.getCreatedIndex()).isEqualTo(10);
+    assertThat(first.getModifiedIndex()).isEqualTo(12);
+    assertThat(node.getNodes().get(1).getNodes()).hasSize(1).first().extracting("value").isEqualTo("x");
+  }
+
+  @Test
+  public void testDecodeKeysOnly() throws IOException {
+    var result = decoder.decode(stream(LISTING), Projection.KEYS_ONLY);
+    assertThat(result.getPrevNode()).isNull();
+    var node = result.getNode();
+    assertThat(node.getNodes()).extracting("key").containsExactly("/x1/rest/a", "/x1/rest/b");
+    assertThat(node.getNodes()).extracting("value").containsOnlyNulls();
+    assertThat(node.getNodes().get(0).getModifiedIndex()).isEqualTo(12);
+  }
+
+  @Test
+  public void testDecodeError() throws IOException {
+    var result = decoder.decode(stream("{\"errorCode\":100,\"message\":\"Key not found\",\"cause\":\"/x1\",\"index\":42}"),
+        Projection.FULL);
+    assertThat(result.isError()).isTrue();
+    assertThat(result.getErrorCode()).isEqualTo(100);
+    assertThat(result.getMessage()).isEqualTo("Key not found");
+    assertThat(result.getCause()).isEqualTo("/x1");
+    assertThat(result.getErrorIndex()).isEqualTo(42);
+  }
+
+  @Test
+  public void testDecodePlainText() {
+    assertThatThrownBy(() -> decoder.decode(stream("404 page not found"), Projection.FULL))
+        .isInstanceOf(IOException.class);
+  }
+
+  private InputStream stream(String json) {
+    return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,54 @@
+package x1.service.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static x1.service.test.Nodes.DIRECTORY;
+import static x1.service.test.Nodes.node;
+
+import java.net.URI;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import x1.service.client.DirectoryCache;
+import x1.service.client.ServiceEndpoint;
+
+@DisplayName("ServiceEndpoint Test")
+public class ServiceEndpointTest {
+  @Test
+  public void testParseRest() {
+    var endpoint = ServiceEndpoint.parse(node(DIRECTORY + "/host1", 7, "hostName=host1\nport=8443\nprotocol=https\n"
+        + "context=/test-v1.0\nbaseUri=https://host1:8443/test-v1.0/shares\n"));
+    assertThat(endpoint.key()).isEqualTo(DIRECTORY + "/host1");
+    assertThat(endpoint.modifiedIndex()).isEqualTo(7);
+    assertThat(endpoint.hostName()).isEqualTo("host1");
+    assertThat(endpoint.port()).isEqualTo(8443);
+    assertThat(endpoint.protocol()).isEqualTo("https");
+    assertThat(endpoint.context()).isEqualTo("/test-v1.0");
+    assertThat(endpoint.jndiName()).isNull();
+    assertThat(endpoint.uri()).isEqualTo(URI.create("https://host1:8443/test-v1.0/shares"));
+  }
+
+  @Test
+  public void testParseJms() {
+    var endpoint = ServiceEndpoint.parse(node(DIRECTORY + "/host1", 7,
+        "hostName=host1\nport=8080\nprotocol=ejb\ncontext=/test-v1.0\njndiName=java:/jms/queue/test\n"));
+    assertThat(endpoint.baseUri()).isNull();
+    assertThat(endpoint.jndiName()).isEqualTo("java:/jms/queue/test");
+    assertThat(endpoint.uri()).isEqualTo(URI.create("ejb://host1:8080"));
+  }
+
+  @Test
+  public void testParsedOncePerModifiedIndex() {
+    var cache = new DirectoryCache(10, 60000);
+    var first = cache.toEndpoint(node(DIRECTORY + "/host1", 7, "hostName=host1\n"));
+    assertThat(cache.toEndpoint(node(DIRECTORY + "/host1", 7, "hostName=host1\n"))).isSameAs(first);
+    var changed = cache.toEndpoint(node(DIRECTORY + "/host1", 8, "hostName=host2\n"));
+    assertThat(changed).isNotSameAs(first);
+    assertThat(changed.hostName()).isEqualTo("host2");
+
+    var nodes = List.of(node(DIRECTORY + "/host1", 8, "hostName=host2\n"));
+    cache.put(DIRECTORY, nodes, cache.getGeneration(DIRECTORY));
+    assertThat(cache.getEndpoints(DIRECTORY)).containsExactly(changed);
+  }
+}
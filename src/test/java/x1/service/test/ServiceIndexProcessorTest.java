@@ -0,0 +1,51 @@
+package x1.service.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import javax.tools.ToolProvider;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import x1.service.registry.ServiceIndexProcessor;
+
+@DisplayName("ServiceIndexProcessor Test")
+public class ServiceIndexProcessorTest {
+  @TempDir
+  Path dir;
+
+  @Test
+  public void testIndexAnnotatedClasses() throws Exception {
+    var sources = dir.resolve("src/x1/demo");
+    Files.createDirectories(sources);
+    Files.writeString(sources.resolve("Shares.java"), """
+        package x1.demo;
+
+        import x1.service.registry.*;
+
+        @Service(technology = Technology.REST, value = "shares", version = "1.0", protocols = { Protocol.HTTPS })
+        public class Shares {
+          @Services(services = { @Service(technology = Technology.JMS, value = "quotes", version = "1.0",
+              protocols = { Protocol.HTTP }) })
+          public static class Quotes {
+          }
+        }
+        """);
+    Files.writeString(sources.resolve("Plain.java"), "package x1.demo;\npublic class Plain {\n}\n");
+    var classes = dir.resolve("classes");
+    Files.createDirectories(classes);
+    var classPath = Path.of(ServiceIndexProcessor.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+    var compiler = ToolProvider.getSystemJavaCompiler();
+    var rc = compiler.run(null, null, null, "-d", classes.toString(), "-cp", classPath.toString(),
+        "-processor", ServiceIndexProcessor.class.getName(), sources.resolve("Shares.java").toString(),
+        sources.resolve("Plain.java").toString());
+    assertThat(rc).isZero();
+    assertThat(Files.readAllLines(classes.resolve(ServiceIndexProcessor.INDEX)))
+        .isEqualTo(List.of("x1.demo.Shares", "x1.demo.Shares$Quotes"));
+  }
+}
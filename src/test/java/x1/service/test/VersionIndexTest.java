@@ -0,0 +1,105 @@
+package x1.service.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static x1.service.test.Nodes.dir;
+import static x1.service.test.Nodes.event;
+import static x1.service.test.Nodes.node;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import x1.service.client.VersionIndex;
+import x1.service.client.VersionRange;
+import x1.service.etcd.Node;
+import x1.service.etcd.Result;
+import x1.service.registry.Protocol;
+import x1.service.registry.Technology;
+
+@DisplayName("VersionIndex Test")
+public class VersionIndexTest {
+  private static final String SERVICE = "/x1/rest/x1.service.test.ShareResource";
+
+  @Test
+  public void testVersionRange() {
+    assertThat(VersionRange.compare("1.10", "1.9")).isPositive();
+    assertThat(VersionRange.compare("1.0", "1.0.1")).isNegative();
+    // equal by their components, ordered as strings
+    assertThat(VersionRange.compare("01.0", "1.0")).isNegative();
+    assertThat(VersionRange.compare("1.0", "1.00")).isNegative();
+    assertThat(VersionRange.compare("1.0", "1.0")).isZero();
+    assertThat(VersionRange.compare("2.0-SNAPSHOT", "2.0")).isNegative();
+    assertThat(VersionRange.compare("2.0-SNAPSHOT", "1.9")).isPositive();
+    assertThat(VersionRange.compare("2.0-beta-2", "2.0-beta-10")).isNegative();
+    assertThat(VersionRange.parse("1.0").contains("1.00")).isFalse();
+    assertThat(VersionRange.parse("[1.0,1.0]").contains("1.00")).isFalse();
+    assertThat(VersionRange.parse("[1.0,1.00]").contains("1.00")).isTrue();
+    assertThat(VersionRange.parse("[1.0,2.0)").contains("2.0-SNAPSHOT")).isTrue();
+    assertThat(VersionRange.parse("2.x").contains("2.0-SNAPSHOT")).isTrue();
+    assertThat(VersionRange.parse("1.x").contains("1.5")).isTrue();
+    assertThat(VersionRange.parse("1.x").contains("10.0")).isFalse();
+    assertThat(VersionRange.parse("*").contains("3.1")).isTrue();
+    assertThat(VersionRange.parse("[1.0,2.0)").contains("1.9.9")).isTrue();
+    assertThat(VersionRange.parse("[1.0,2.0)").contains("2.0")).isFalse();
+    assertThat(VersionRange.parse("(,2.0]").contains("2.0")).isTrue();
+    assertThat(VersionRange.parse("1.0").contains("1.0")).isTrue();
+    assertThat(VersionRange.parse("1.0").contains("1.1")).isFalse();
+  }
+
+  @Test
+  public void testSelectHighestVersionWithInstances() {
+    var index = new VersionIndex("/x1");
+    assertThat(index.isReady()).isFalse();
+    var snapshot = new Result();
+    snapshot.setNode(dir("/x1", instance("1.0", "host1"), instance("1.2", "host1"), instance("2.0", "host1")));
+    index.onResync(snapshot);
+    assertThat(index.isReady()).isTrue();
+    assertThat(select(index, "1.x")).isEqualTo("1.2");
+    assertThat(select(index, "*")).isEqualTo("2.0");
+    assertThat(select(index, "3.x")).isNull();
+
+    index.onEvent(event("expire", instance("1.2", "host1")));
+    assertThat(select(index, "1.x")).isEqualTo("1.0");
+
+    index.onEvent(event("set", instance("1.10", "host2")));
+    assertThat(select(index, "1.x")).isEqualTo("1.10");
+
+    index.onEvent(event("delete", dir(SERVICE + "/1.10")));
+    assertThat(select(index, "1.x")).isEqualTo("1.0");
+  }
+
+  @Test
+  public void testKeepVersionsEqualByComponents() {
+    var index = new VersionIndex("/x1");
+    var snapshot = new Result();
+    snapshot.setNode(
+        dir("/x1", instance("1.0", "host1"), instance("1.00", "host2"), instance("1.1-SNAPSHOT", "host3")));
+    index.onResync(snapshot);
+    assertThat(select(index, "1.x")).isEqualTo("1.1-SNAPSHOT");
+    index.onEvent(event("delete", dir(SERVICE + "/1.1-SNAPSHOT")));
+    assertThat(select(index, "1.x")).isEqualTo("1.00");
+    index.onEvent(event("expire", instance("1.00", "host2")));
+    assertThat(select(index, "1.x")).isEqualTo("1.0");
+  }
+
+  @Test
+  public void testSelectExactVersion() {
+    var index = new VersionIndex("/x1");
+    var snapshot = new Result();
+    snapshot.setNode(dir("/x1", instance("1.0", "host1"), instance("1.00", "host2")));
+    index.onResync(snapshot);
+    // 1.00 is ordered after 1.0, but is not the requested directory
+    assertThat(select(index, "1.0")).isEqualTo("1.0");
+    assertThat(select(index, "1.00")).isEqualTo("1.00");
+    index.onEvent(event("expire", instance("1.0", "host1")));
+    assertThat(select(index, "1.0")).isNull();
+  }
+
+  private static String select(VersionIndex index, String range) {
+    return index.select(Technology.REST, "x1.service.test.ShareResource", VersionRange.parse(range), "local",
+        Protocol.HTTPS);
+  }
+
+  private static Node instance(String version, String host) {
+    return node(SERVICE + "/" + version + "/https/local/" + host);
+  }
+}